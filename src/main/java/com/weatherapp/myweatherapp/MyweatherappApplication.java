@@ -1,9 +1,12 @@
 package com.weatherapp.myweatherapp;
 
+import com.weatherapp.myweatherapp.model.ModelRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(ModelRuntimeHints.class)
 public class MyweatherappApplication {
 
 	public static void main(String[] args) {
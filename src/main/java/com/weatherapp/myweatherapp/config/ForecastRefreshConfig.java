@@ -0,0 +1,61 @@
+package com.weatherapp.myweatherapp.config;
+
+import com.weatherapp.myweatherapp.service.ForecastSubscriptions;
+import com.weatherapp.myweatherapp.service.WeatherService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import java.time.Duration;
+
+/**
+ * Schedules the refresh-ahead pass over the most requested cities (see WeatherService.refreshHotCities)
+ * and the pass over subscribed cities that pushes their updates (see ForecastSubscriptions.pollSubscribedCities).
+ * Registered here rather than with @Scheduled so the interval can use the same duration format as the other settings.
+ * Both run on a scheduler of their own, a thread each, rather than Spring's default single scheduler thread,
+ * so neither pass waits behind the other.
+ */
+@Configuration
+@EnableScheduling
+public class ForecastRefreshConfig implements SchedulingConfigurer, DisposableBean {
+
+  @Autowired
+  WeatherService weatherService;
+
+  @Autowired
+  ForecastSubscriptions forecastSubscriptions;
+
+  @Value("${weather.cache.refresh-ahead.top-n:20}")
+  int refreshAheadTopN;
+
+  @Value("${weather.cache.refresh-ahead.interval:30s}")
+  Duration refreshAheadInterval;
+
+  @Value("${weather.subscriptions.interval:15s}")
+  Duration subscriptionInterval;
+
+  private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+
+  @Override
+  public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+    scheduler.setPoolSize(2);
+    scheduler.setThreadNamePrefix("forecast-schedule-");
+    scheduler.initialize();
+    taskRegistrar.setTaskScheduler(scheduler);
+
+    if (refreshAheadTopN > 0) {
+      taskRegistrar.addFixedDelayTask(weatherService::refreshHotCities, refreshAheadInterval);
+    }
+    taskRegistrar.addFixedDelayTask(forecastSubscriptions::pollSubscribedCities, subscriptionInterval);
+  }
+
+  @Override
+  public void destroy() {
+    scheduler.shutdown();
+  }
+}
@@ -0,0 +1,73 @@
+package com.weatherapp.myweatherapp.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Non-blocking counterpart of VisualcrossingClientConfig, active when the app runs on the reactive stack
+ * (spring.main.web-application-type=reactive). Uses the same weather.visualcrossing.http.* settings.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveVisualcrossingClientConfig {
+
+  @Value("${weather.visualcrossing.http.max-connections:200}")
+  int maxConnections;
+
+  @Value("${weather.visualcrossing.http.max-pending-acquires:10000}")
+  int maxPendingAcquires;
+
+  @Value("${weather.visualcrossing.http.connect-timeout:2s}")
+  Duration connectTimeout;
+
+  @Value("${weather.visualcrossing.http.read-timeout:5s}")
+  Duration readTimeout;
+
+  @Value("${weather.visualcrossing.http.connection-request-timeout:1s}")
+  Duration connectionRequestTimeout;
+
+  @Value("${weather.visualcrossing.http.idle-timeout:30s}")
+  Duration idleTimeout;
+
+  /**
+   * Serve on Netty's event loops rather than Tomcat, which is also on the classpath for the servlet stack
+   */
+  @Bean
+  public NettyReactiveWebServerFactory reactiveWebServerFactory() {
+    return new NettyReactiveWebServerFactory();
+  }
+
+  /**
+   * Keep-alive pool shared by all upstream requests. Requests beyond maxConnections wait for a free connection,
+   * up to maxPendingAcquires of them, which is where backpressure from client fan-out ends up.
+   */
+  @Bean(destroyMethod = "dispose")
+  public ConnectionProvider visualcrossingConnectionProvider() {
+    return ConnectionProvider.builder("visualcrossing")
+        .maxConnections(maxConnections)
+        .pendingAcquireMaxCount(maxPendingAcquires)
+        .pendingAcquireTimeout(connectionRequestTimeout)
+        .maxIdleTime(idleTimeout)
+        .build();
+  }
+
+  @Bean
+  public WebClient visualcrossingWebClient(WebClient.Builder builder, ConnectionProvider visualcrossingConnectionProvider) {
+    HttpClient httpClient = HttpClient.create(visualcrossingConnectionProvider)
+        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+        .responseTimeout(readTimeout)
+        // Send Accept-Encoding: gzip and inflate compressed responses (the blocking client does this by default)
+        .compress(true);
+    return builder.clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+  }
+}
@@ -0,0 +1,38 @@
+package com.weatherapp.myweatherapp.config;
+
+import com.weatherapp.myweatherapp.repository.RedisSharedForecastCache;
+import com.weatherapp.myweatherapp.repository.SharedForecastCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Picks the second-level forecast cache shared between replicas: a Redis-compatible server when
+ * weather.shared-cache.url is set, otherwise none and every node keeps to its own in-memory cache.
+ */
+@Configuration
+public class SharedForecastCacheConfig {
+
+  @Value("${weather.shared-cache.url:}")
+  String url;
+
+  @Value("${weather.cache.ttl:5m}")
+  Duration cacheTtl;
+
+  @Value("${weather.shared-cache.lock-lease:10s}")
+  Duration lockLease;
+
+  @Value("${weather.shared-cache.timeout:500ms}")
+  Duration timeout;
+
+  @Bean(destroyMethod = "close")
+  public SharedForecastCache sharedForecastCache(MeterRegistry meterRegistry) {
+    if (url.isBlank()) {
+      return SharedForecastCache.none();
+    }
+    return new RedisSharedForecastCache(url, cacheTtl, lockLease, timeout, meterRegistry);
+  }
+}
@@ -0,0 +1,47 @@
+package com.weatherapp.myweatherapp.config;
+
+import com.weatherapp.myweatherapp.stub.RecordedVisualcrossingServer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Starts the recorded Visual Crossing stand-in when weather.stub-upstream.enabled is set, as the stub-upstream
+ * profile does. Nothing leaves the machine in this mode, so it is what load tests run against.
+ */
+@Configuration
+@ConditionalOnProperty(name = "weather.stub-upstream.enabled", havingValue = "true")
+public class StubUpstreamConfig {
+
+  @Value("${weather.stub-upstream.port:18090}")
+  int port;
+
+  @Value("${weather.stub-upstream.recordings:}")
+  String recordings;
+
+  @Value("${weather.stub-upstream.latency:150ms}")
+  Duration latency;
+
+  @Value("${weather.stub-upstream.latency-jitter:100ms}")
+  Duration latencyJitter;
+
+  @Value("${weather.stub-upstream.error-rate:0}")
+  double errorRate;
+
+  @Value("${weather.stub-upstream.throttle-rate:0}")
+  double throttleRate;
+
+  @Bean(destroyMethod = "close")
+  public RecordedVisualcrossingServer recordedVisualcrossingServer() throws IOException {
+    // JVM-wide JDK HTTP server settings, read when the first server starts; set here so only stub runs get them.
+    // The JDK server writes headers and body separately; without this, Nagle + delayed ACK adds ~40ms per response
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    // Keep idle keep-alive connections open; by default the server closes any beyond 200, breaking pooled clients
+    System.setProperty("sun.net.httpserver.maxIdleConnections", "10000");
+    return new RecordedVisualcrossingServer(port, recordings, latency, latencyJitter, errorRate, throttleRate);
+  }
+}
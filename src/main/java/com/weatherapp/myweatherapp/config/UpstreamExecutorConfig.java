@@ -0,0 +1,132 @@
+package com.weatherapp.myweatherapp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executors used for upstream weather lookups, and for writing their results to subscribers.
+ * With spring.threads.virtual.enabled=true (Java 21+) every lookup runs on its own virtual thread,
+ * otherwise comparison lookups share a bounded pool of platform threads.
+ */
+@Configuration
+public class UpstreamExecutorConfig {
+
+  @Value("${weather.upstream.concurrency:32}")
+  int concurrency;
+
+  @Value("${weather.upstream.queue-capacity:500}")
+  int queueCapacity;
+
+  @Value("${weather.cache.load-concurrency:32}")
+  int loadConcurrency;
+
+  @Value("${weather.cache.refresh-concurrency:4}")
+  int refreshConcurrency;
+
+  @Value("${weather.cache.max-size:1000}")
+  int cacheMaxSize;
+
+  @Value("${weather.subscriptions.send-concurrency:4}")
+  int sendConcurrency;
+
+  /**
+   * Bounded executor used to fetch several city forecasts concurrently.
+   * The pool size caps how many upstream lookups can be in flight at once across all requests;
+   * lookups beyond the queue capacity are rejected, which GlobalExceptionHandler answers with a 503.
+   */
+  @Bean
+  @ConditionalOnThreading(Threading.PLATFORM)
+  public AsyncTaskExecutor upstreamExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(concurrency);
+    executor.setMaxPoolSize(concurrency);
+    executor.setQueueCapacity(queueCapacity);
+    executor.setThreadNamePrefix("upstream-");
+    executor.setWaitForTasksToCompleteOnShutdown(false);
+    executor.initialize();
+    return executor;
+  }
+
+  /**
+   * Virtual-thread variant: one thread per lookup, still capped at weather.upstream.concurrency in flight.
+   * Callers are throttled (not rejected) at the limit, which is cheap when they are virtual threads themselves.
+   */
+  @Bean(name = "upstreamExecutor")
+  @ConditionalOnThreading(Threading.VIRTUAL)
+  public AsyncTaskExecutor virtualUpstreamExecutor() {
+    SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("upstream-");
+    executor.setVirtualThreads(true);
+    executor.setConcurrencyLimit(concurrency);
+    return executor;
+  }
+
+  /**
+   * Bounded pool for forecast cache loads, so the blocking part of a load (the upstream call, or waiting on
+   * another node's fetch through the shared cache) runs off the request thread and outside the cache's locks.
+   * At most weather.cache.load-concurrency loads run at once; loads beyond the queue capacity are rejected,
+   * which GlobalExceptionHandler answers with a 503.
+   */
+  @Bean
+  @ConditionalOnThreading(Threading.PLATFORM)
+  public TaskExecutor forecastLoadExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(loadConcurrency);
+    executor.setMaxPoolSize(loadConcurrency);
+    executor.setQueueCapacity(queueCapacity);
+    executor.setThreadNamePrefix("forecast-load-");
+    executor.setWaitForTasksToCompleteOnShutdown(false);
+    executor.initialize();
+    return executor;
+  }
+
+  /**
+   * Runs forecast cache loads on their own virtual thread, so a blocking upstream call never happens
+   * while the cache holds a lock (which would pin the caller's carrier thread).
+   */
+  @Bean(name = "forecastLoadExecutor")
+  @ConditionalOnThreading(Threading.VIRTUAL)
+  public TaskExecutor virtualForecastLoadExecutor() {
+    return new VirtualThreadTaskExecutor("forecast-load-");
+  }
+
+  /**
+   * Small pool for background refreshes of cached forecasts, so at most weather.cache.refresh-concurrency
+   * refreshes hit the upstream at once. The cache runs at most one refresh per city, so a queue the size
+   * of the cache never overflows.
+   */
+  @Bean
+  public TaskExecutor forecastRefreshExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(refreshConcurrency);
+    executor.setMaxPoolSize(refreshConcurrency);
+    executor.setQueueCapacity(cacheMaxSize);
+    executor.setThreadNamePrefix("forecast-refresh-");
+    executor.setWaitForTasksToCompleteOnShutdown(false);
+    executor.initialize();
+    return executor;
+  }
+
+  /**
+   * Small pool writing subscription events to their streams, so a slow client blocks one of these threads rather
+   * than the polling thread. Each stream queues its own events and has at most one write task here at a time
+   * (see SseForecastListener), so the queue never holds more tasks than there are open streams.
+   */
+  @Bean
+  public TaskExecutor subscriptionSendExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(sendConcurrency);
+    executor.setMaxPoolSize(sendConcurrency);
+    executor.setThreadNamePrefix("subscription-send-");
+    executor.setWaitForTasksToCompleteOnShutdown(false);
+    executor.initialize();
+    return executor;
+  }
+}
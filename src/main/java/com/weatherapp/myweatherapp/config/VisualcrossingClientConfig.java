@@ -0,0 +1,83 @@
+package com.weatherapp.myweatherapp.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * Builds the single HTTP client used to talk to Visual Crossing.
+ * Connections are pooled and kept alive so repeated lookups reuse the same socket (and TLS session)
+ * instead of opening a new one per request.
+ */
+@Configuration
+public class VisualcrossingClientConfig {
+
+  @Value("${weather.visualcrossing.http.max-connections:200}")
+  int maxConnections;
+
+  @Value("${weather.visualcrossing.http.max-connections-per-route:50}")
+  int maxConnectionsPerRoute;
+
+  @Value("${weather.visualcrossing.http.connect-timeout:2s}")
+  Duration connectTimeout;
+
+  @Value("${weather.visualcrossing.http.read-timeout:5s}")
+  Duration readTimeout;
+
+  @Value("${weather.visualcrossing.http.connection-request-timeout:1s}")
+  Duration connectionRequestTimeout;
+
+  @Value("${weather.visualcrossing.http.idle-timeout:30s}")
+  Duration idleTimeout;
+
+  @Bean(destroyMethod = "close")
+  public PoolingHttpClientConnectionManager visualcrossingConnectionManager() {
+    return PoolingHttpClientConnectionManagerBuilder.create()
+        .setMaxConnTotal(maxConnections)
+        .setMaxConnPerRoute(maxConnectionsPerRoute)
+        .setDefaultSocketConfig(SocketConfig.custom()
+            .setSoKeepAlive(true)
+            .setSoTimeout(Timeout.of(readTimeout))
+            .build())
+        .setDefaultConnectionConfig(ConnectionConfig.custom()
+            .setConnectTimeout(Timeout.of(connectTimeout))
+            .setSocketTimeout(Timeout.of(readTimeout))
+            // Re-check sockets that sat idle for a while before handing them out again
+            .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+            .build())
+        .build();
+  }
+
+  @Bean(destroyMethod = "close")
+  public CloseableHttpClient visualcrossingHttpClient(PoolingHttpClientConnectionManager visualcrossingConnectionManager) {
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setResponseTimeout(Timeout.of(readTimeout))
+        .setConnectionRequestTimeout(Timeout.of(connectionRequestTimeout))
+        .build();
+
+    return HttpClients.custom()
+        .setConnectionManager(visualcrossingConnectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .evictExpiredConnections()
+        .evictIdleConnections(TimeValue.of(idleTimeout))
+        .build();
+  }
+
+  @Bean
+  public RestTemplate visualcrossingRestTemplate(CloseableHttpClient visualcrossingHttpClient) {
+    return new RestTemplate(new HttpComponentsClientHttpRequestFactory(visualcrossingHttpClient));
+  }
+}
@@ -0,0 +1,91 @@
+package com.weatherapp.myweatherapp.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Builds cacheable forecast responses for WeatherController and ReactiveWeatherController.
+ * The ETag is the forecast's content version, so Spring answers a matching If-None-Match with 304 and no body,
+ * and clients may reuse the forecast for as long as it stays in our cache.
+ * <p>
+ * Tomcat won't compress a response with a strong ETag (the bytes would no longer match the tag), so forecasts are
+ * gzipped here instead, under their own ETag. The compressed form is kept per version, so polling clients cost
+ * one serialization and compression per forecast fetched rather than one per request.
+ */
+@Component
+public class ForecastResponses {
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${weather.cache.max-size:1000}")
+    long cacheMaxSize;
+
+    Cache<String, byte[]> gzippedByVersion;
+
+    @PostConstruct
+    void initCache() {
+        CityInfo.writeVersionsWith(objectMapper);
+        gzippedByVersion = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .build();
+    }
+
+    /**
+     * @param acceptEncoding The request's Accept-Encoding header, or null
+     */
+    ResponseEntity<?> ok(CityInfo cityInfo, Duration timeToLive, String acceptEncoding) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(timeToLive))
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+
+        String version = cityInfo.getVersion();
+        if (!acceptsGzip(acceptEncoding)) {
+            return response.eTag(version).body(cityInfo);
+        }
+        return response.eTag(version + "-gzip")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .body(gzippedByVersion.get(version, ignored -> gzip(cityInfo)));
+    }
+
+    private byte[] gzip(CityInfo cityInfo) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(out, cityInfo);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                // gzip;q=0 means not acceptable
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,195 @@
+package com.weatherapp.myweatherapp.controller;
+
+import com.weatherapp.myweatherapp.exception.UpstreamTimeoutException;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.DaylightRank;
+import com.weatherapp.myweatherapp.model.RainChange;
+import com.weatherapp.myweatherapp.service.ReactiveWeatherService;
+import com.weatherapp.myweatherapp.service.SolarDaylight;
+import com.weatherapp.myweatherapp.service.WeatherService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reactive counterpart of WeatherController, serving the same endpoints when the app runs with
+ * spring.main.web-application-type=reactive. No request thread blocks while waiting on Visual Crossing.
+ */
+@Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWeatherController {
+
+    @Autowired
+    ReactiveWeatherService weatherService;
+
+    @Autowired
+    ForecastResponses forecastResponses;
+
+    @Autowired
+    SolarDaylight solarDaylight;
+
+    @Value("${weather.compare.timeout:10s}")
+    Duration compareTimeout;
+
+    @Value("${weather.batch.max-cities:50}")
+    int batchMaxCities;
+
+    @Value("${weather.batch.concurrency:8}")
+    int batchConcurrency;
+
+    @Value("${weather.subscriptions.timeout:30m}")
+    Duration subscriptionTimeout;
+
+    @GetMapping("/forecast/{city}")
+    public Mono<ResponseEntity<?>> forecastByCity(@PathVariable("city") String city,
+                                                  @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        return weatherService.forecastByCity(city)
+                .map(cityInfo -> forecastResponses.ok(cityInfo, weatherService.timeToLive(city), acceptEncoding));
+    }
+
+    /**
+     * Given two city names, this method compares the length of the daylight hours and returns the city with the longest day
+     * If the daylight hours are equal in both cities, an exception is thrown
+     *
+     * @param city1 The name of the first city
+     * @param city2 The name of the second city
+     * @return CityInfo
+     */
+    @GetMapping("/compare-daylight")
+    public Mono<ResponseEntity<CityInfo>> compareDaylight(@RequestParam("city1") String city1, @RequestParam("city2") String city2) {
+
+        // Compare the computed daylight of the two cities, as WeatherController does, falling back to the forecasts
+        // themselves when the two are too close for the computed daylight to call
+        List<String> cities = List.of(city1, city2);
+        return daylightAll(cities)
+                .flatMap(daylight -> solarDaylight.ordersLikeForecasts(daylight.get(0), daylight.get(1))
+                        ? weatherService.forecastByCity(WeatherComparisons.longerDaylight(daylight.get(0), daylight.get(1)).city())
+                        : forecastAll(cities).map(forecasts -> WeatherComparisons.longerDaylight(forecasts.get(0), forecasts.get(1))))
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Given two city names, this method checks which city its currently raining in
+     * Returns both cities, one city or an empty list, in request order
+     *
+     * @param city1 The name of the first city
+     * @param city2 The name of the second city
+     * @return List<CityInfo>
+     */
+    @GetMapping("/compare-rain")
+    public Mono<ResponseEntity<List<CityInfo>>> compareRain(@RequestParam("city1") String city1, @RequestParam("city2") String city2) {
+
+        return forecastAll(List.of(city1, city2)).map(forecasts -> ResponseEntity.ok(WeatherComparisons.raining(forecasts)));
+    }
+
+    /**
+     * Given a list of city names, this method ranks the cities by the length of their daylight hours, longest first
+     * Cities with equal daylight hours share the same rank
+     *
+     * @param cities The names of the cities to compare
+     * @return List<DaylightRank>
+     */
+    @GetMapping("/compare-daylight/batch")
+    public Mono<ResponseEntity<List<DaylightRank>>> compareDaylightBatch(@RequestParam("cities") List<String> cities) {
+
+        List<String> distinctCities = WeatherComparisons.distinctCities(cities, batchMaxCities);
+        return daylightAll(distinctCities)
+                .map(daylight -> ResponseEntity.ok(WeatherComparisons.rankByDaylight(daylight)));
+    }
+
+    /**
+     * Given a list of city names, this method returns the cities where it is currently raining, in request order
+     *
+     * @param cities The names of the cities to check
+     * @return List<CityInfo>
+     */
+    @GetMapping("/compare-rain/batch")
+    public Mono<ResponseEntity<List<CityInfo>>> compareRainBatch(@RequestParam("cities") List<String> cities) {
+
+        return forecastAll(WeatherComparisons.distinctCities(cities, batchMaxCities))
+                .map(forecasts -> ResponseEntity.ok(WeatherComparisons.raining(forecasts)));
+    }
+
+    /**
+     * Given a list of city names, this method streams their forecasts as server-sent events: a "forecast" event with
+     * each city's current forecast, then one whenever it changes, and a "rain" event whenever it starts or stops raining
+     *
+     * @param cities The names of the cities to follow
+     * @return Flux<ServerSentEvent<Object>>
+     */
+    @GetMapping(path = "/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public Flux<ServerSentEvent<Object>> subscribe(@RequestParam("cities") List<String> cities) {
+
+        return Flux.fromIterable(WeatherComparisons.distinctCities(cities, batchMaxCities))
+                .flatMap(city -> {
+                    String key = WeatherService.normalize(city);
+                    AtomicReference<CityInfo> previous = new AtomicReference<>();
+                    return weatherService.forecastUpdates(city).concatMap(cityInfo -> {
+                        ServerSentEvent<Object> forecast = ServerSentEvent.builder((Object) cityInfo)
+                                .event("forecast").id(cityInfo.getVersion()).build();
+                        RainChange rainChange = RainChange.between(key, previous.getAndSet(cityInfo), cityInfo);
+                        return rainChange == null ? Flux.just(forecast)
+                                : Flux.just(forecast, ServerSentEvent.builder((Object) rainChange).event("rain").build());
+                    });
+                })
+                .take(subscriptionTimeout);
+    }
+
+    /**
+     * Fetches the forecasts for the given cities, at most batchConcurrency at a time, failing on the first error
+     * or with an UpstreamTimeoutException if they don't all arrive within the compare timeout.
+     */
+    /**
+     * Today's daylight for each city, in order: computed for cities already located, from forecasts looked up
+     * together for the rest
+     */
+    private Mono<List<DaylightRank>> daylightAll(List<String> cities) {
+        DaylightRank[] daylight = new DaylightRank[cities.size()];
+        List<String> unresolved = new ArrayList<>();
+        for (int i = 0; i < daylight.length; i++) {
+            daylight[i] = solarDaylight.daylight(cities.get(i));
+            if (daylight[i] == null) {
+                unresolved.add(cities.get(i));
+            }
+        }
+
+        if (unresolved.isEmpty()) {
+            return Mono.just(Arrays.asList(daylight));
+        }
+        return forecastAll(unresolved).map(forecasts -> {
+            for (int i = 0, j = 0; i < daylight.length; i++) {
+                if (daylight[i] == null) {
+                    daylight[i] = solarDaylight.resolve(cities.get(i), forecasts.get(j++));
+                }
+            }
+            return Arrays.asList(daylight);
+        });
+    }
+
+    private Mono<List<CityInfo>> forecastAll(List<String> cities) {
+        return weatherService.forecastByCities(cities, batchConcurrency)
+                .collectList()
+                .timeout(compareTimeout, Mono.error(() ->
+                        new UpstreamTimeoutException("Timed out fetching weather for " + String.join(", ", cities))));
+    }
+}
@@ -0,0 +1,93 @@
+package com.weatherapp.myweatherapp.controller;
+
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.RainChange;
+import com.weatherapp.myweatherapp.service.ForecastSubscriptions;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes subscription updates to a server-sent event stream: "forecast" events carrying the CityInfo (with its
+ * version as the event id) and "rain" events carrying a RainChange. A client that has gone away ends the stream.
+ * <p>
+ * Listener calls only queue the event. It is written on the send executor by at most one drain per stream at a time,
+ * in the order queued, so a slow client never holds up the polling thread or the other subscribers. A client that
+ * falls more than maxPending events behind is disconnected rather than queued for without limit.
+ */
+class SseForecastListener implements ForecastSubscriptions.Listener {
+
+    private final SseEmitter emitter;
+
+    private final Executor sendExecutor;
+
+    private final int maxPending;
+
+    private final Queue<SseEmitter.SseEventBuilder> pending = new ConcurrentLinkedQueue<>();
+
+    // Events queued but not yet written; going from 0 to 1 starts a drain, which runs until it is back to 0
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    SseForecastListener(SseEmitter emitter, Executor sendExecutor, int maxPending) {
+        this.emitter = emitter;
+        this.sendExecutor = sendExecutor;
+        this.maxPending = maxPending;
+    }
+
+    @Override
+    public void onForecast(String city, CityInfo cityInfo) {
+        enqueue(SseEmitter.event().name("forecast").id(cityInfo.getVersion()).data(cityInfo));
+    }
+
+    @Override
+    public void onRainChange(RainChange change) {
+        enqueue(SseEmitter.event().name("rain").data(change));
+    }
+
+    private void enqueue(SseEmitter.SseEventBuilder event) {
+        if (closed) {
+            return;
+        }
+        pending.add(event);
+        int count = queued.incrementAndGet();
+        if (count > maxPending) {
+            close(new IllegalStateException("Subscriber is more than " + maxPending + " events behind"));
+        } else if (count == 1) {
+            try {
+                sendExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                close(e);
+            }
+        }
+    }
+
+    private void drain() {
+        do {
+            SseEmitter.SseEventBuilder event = pending.poll();
+            if (!closed) {
+                send(event);
+            }
+        } while (queued.decrementAndGet() > 0);
+    }
+
+    private void send(SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            close(e);
+        }
+    }
+
+    private void close(Exception e) {
+        closed = true;
+        // Completing the emitter runs its completion callback, which cancels the subscription
+        emitter.completeWithError(e);
+    }
+}
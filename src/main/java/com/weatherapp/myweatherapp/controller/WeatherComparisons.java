@@ -0,0 +1,122 @@
+package com.weatherapp.myweatherapp.controller;
+
+import com.weatherapp.myweatherapp.exception.BatchSizeException;
+import com.weatherapp.myweatherapp.exception.DaylightException;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.DaylightRank;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Comparison logic shared by the servlet and reactive controllers
+ */
+public final class WeatherComparisons {
+
+    private WeatherComparisons() {
+    }
+
+    /**
+     * Returns the city with the longest day
+     *
+     * @throws DaylightException if the daylight hours are equal in both cities
+     */
+    public static CityInfo longerDaylight(CityInfo cityInfo1, CityInfo cityInfo2) {
+        long daylight1Minutes = cityInfo1.getDaylightMinutes();
+        long daylight2Minutes = cityInfo2.getDaylightMinutes();
+
+        if (daylight1Minutes > daylight2Minutes) {
+            return cityInfo1;
+        } else if (daylight1Minutes < daylight2Minutes) {
+            return cityInfo2;
+        } else {
+            throw new DaylightException("Daylight hours are equal in both cities");
+        }
+    }
+
+    /**
+     * Returns whichever of the two has the longer day
+     *
+     * @throws DaylightException if the daylight hours are equal in both cities
+     */
+    public static DaylightRank longerDaylight(DaylightRank daylight1, DaylightRank daylight2) {
+        if (daylight1.daylightMinutes() > daylight2.daylightMinutes()) {
+            return daylight1;
+        } else if (daylight1.daylightMinutes() < daylight2.daylightMinutes()) {
+            return daylight2;
+        } else {
+            throw new DaylightException("Daylight hours are equal in both cities");
+        }
+    }
+
+    /**
+     * Returns the cities where it is currently raining, in the given order
+     */
+    public static List<CityInfo> raining(List<CityInfo> forecasts) {
+        List<CityInfo> raining = new ArrayList<>(forecasts.size());
+        for (CityInfo cityInfo : forecasts) {
+            if (cityInfo.isRaining()) {
+                raining.add(cityInfo);
+            }
+        }
+        return raining;
+    }
+
+    /**
+     * Ranks the cities by daylight minutes, longest first, giving ties the same rank
+     *
+     * @param cities    The requested city names
+     * @param forecasts The forecasts for those cities, in the same order
+     * @return List<DaylightRank>
+     */
+    public static List<DaylightRank> rankByDaylight(List<String> cities, List<CityInfo> forecasts) {
+        // Pair each city with its daylight duration and sort longest first
+        List<DaylightRank> unranked = new ArrayList<>(cities.size());
+        for (int i = 0; i < cities.size(); i++) {
+            CityInfo cityInfo = forecasts.get(i);
+            unranked.add(new DaylightRank(0, cities.get(i), cityInfo.getAddress(), cityInfo.getDaylightMinutes()));
+        }
+        return rankByDaylight(unranked);
+    }
+
+    /**
+     * Ranks unranked entries by daylight minutes, longest first, giving ties the same rank
+     *
+     * @param daylight One entry per city, with any rank
+     * @return List<DaylightRank>
+     */
+    public static List<DaylightRank> rankByDaylight(List<DaylightRank> daylight) {
+        List<DaylightRank> unranked = new ArrayList<>(daylight);
+        unranked.sort(Comparator.comparingLong(DaylightRank::daylightMinutes).reversed());
+
+        // Assign ranks, giving ties the same rank
+        List<DaylightRank> ranking = new ArrayList<>(unranked.size());
+        for (int i = 0; i < unranked.size(); i++) {
+            DaylightRank entry = unranked.get(i);
+            int rank = i > 0 && ranking.get(i - 1).daylightMinutes() == entry.daylightMinutes() ? ranking.get(i - 1).rank() : i + 1;
+            ranking.add(new DaylightRank(rank, entry.city(), entry.address(), entry.daylightMinutes()));
+        }
+        return ranking;
+    }
+
+    /**
+     * Trims the requested city names, drops blanks and duplicates, and enforces the batch size limit
+     */
+    public static List<String> distinctCities(List<String> cities, int maxCities) {
+        LinkedHashSet<String> distinct = new LinkedHashSet<>();
+        for (String city : cities) {
+            if (!city.isBlank()) {
+                distinct.add(city.trim());
+            }
+        }
+        if (distinct.isEmpty()) {
+            throw new BatchSizeException("At least one city is required");
+        }
+        if (distinct.size() > maxCities) {
+            throw new BatchSizeException("At most " + maxCities + " cities can be compared at once");
+        }
+        return List.copyOf(distinct);
+    }
+}
@@ -1,32 +1,105 @@
 package com.weatherapp.myweatherapp.controller;
 
-import com.weatherapp.myweatherapp.exception.DaylightException;
+import com.weatherapp.myweatherapp.exception.UpstreamTimeoutException;
 import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.DaylightRank;
+import com.weatherapp.myweatherapp.service.ForecastSubscriptions;
+import com.weatherapp.myweatherapp.service.SolarDaylight;
 import com.weatherapp.myweatherapp.service.WeatherService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.Duration;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 @Controller
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class WeatherController {
 
+    private static final Logger log = LoggerFactory.getLogger(WeatherController.class);
+
     @Autowired
     WeatherService weatherService;
 
+    @Autowired
+    ForecastResponses forecastResponses;
+
+    @Autowired
+    ForecastSubscriptions forecastSubscriptions;
+
+    @Autowired
+    SolarDaylight solarDaylight;
+
+    @Autowired
+    @Qualifier("upstreamExecutor")
+    AsyncTaskExecutor upstreamExecutor;
+
+    @Autowired
+    @Qualifier("subscriptionSendExecutor")
+    TaskExecutor subscriptionSendExecutor;
+
+    @Value("${weather.compare.timeout:10s}")
+    Duration compareTimeout;
+
+    @Value("${weather.batch.max-cities:50}")
+    int batchMaxCities;
+
+    @Value("${weather.batch.concurrency:8}")
+    int batchConcurrency;
+
+    @Value("${weather.visualcrossing.multi.max-locations:10}")
+    int citiesPerRequest;
+
+    @Value("${weather.subscriptions.timeout:30m}")
+    Duration subscriptionTimeout;
+
+    @Value("${weather.subscriptions.max-pending:100}")
+    int subscriptionMaxPending;
+
+    @Value("${weather.logging.sample-rate:0.01}")
+    double logSampleRate;
+
+    /**
+     * Returns the forecast for the given city, tagged with its version so polling clients can revalidate with
+     * If-None-Match and get a 304 instead of the whole forecast while it hasn't changed
+     *
+     * @param city The name of the city
+     * @param acceptEncoding The Accept-Encoding header; gzip gets a pre-compressed body
+     * @return CityInfo
+     */
     @GetMapping("/forecast/{city}")
-    public ResponseEntity<CityInfo> forecastByCity(@PathVariable("city") String city) {
+    public ResponseEntity<?> forecastByCity(@PathVariable("city") String city,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
 
         CityInfo ci = weatherService.forecastByCity(city);
 
-        return ResponseEntity.ok(ci);
+        return forecastResponses.ok(ci, weatherService.timeToLive(city), acceptEncoding);
     }
 
     // TODO: given two city names, compare the length of the daylight hours and return the city with the longest day
@@ -44,38 +117,19 @@ public class WeatherController {
     @GetMapping("/compare-daylight")
     public ResponseEntity<CityInfo> compareDaylight(@RequestParam("city1") String city1, @RequestParam("city2") String city2) {
 
-        // Get the forecast for the two cities
-        CityInfo cityInfo1 = weatherService.forecastByCity(city1);
-        CityInfo cityInfo2 = weatherService.forecastByCity(city2);
-
-        // Get the sunrise and sunset times for the two cities
-        String sunrise1 = cityInfo1.getSunrise();
-        String sunset1 = cityInfo1.getSunset();
-
-        String sunrise2 = cityInfo2.getSunrise();
-        String sunset2 = cityInfo2.getSunset();
-
-        // Parse the sunrise and sunset times to LocalTime
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss");
-        LocalTime sunriseTime1 = LocalTime.parse(sunrise1, formatter);
-        LocalTime sunsetTime1 = LocalTime.parse(sunset1, formatter);
-        LocalTime sunriseTime2 = LocalTime.parse(sunrise2, formatter);
-        LocalTime sunsetTime2 = LocalTime.parse(sunset2, formatter);
-
-        // Calculate the duration of daylight for the two cities
-        long daylight1Minutes = Duration.between(sunriseTime1, sunsetTime1).toMinutes();
-        long daylight2Minutes = Duration.between(sunriseTime2, sunsetTime2).toMinutes();
-
-
-        // Compare the daylight hours and return the city with the longest day
-        if (daylight1Minutes > daylight2Minutes) {
-            return ResponseEntity.ok(cityInfo1);
-        } else if (daylight1Minutes < daylight2Minutes) {
-            return ResponseEntity.ok(cityInfo2);
-            // Throw an exception when the daylight hours are equal in both cities
-        } else {
-            throw new DaylightException("Daylight hours are equal in both cities");
+        // Compare the computed daylight of the two cities, looking up forecasts only for cities not located yet;
+        // full forecasts rather than current conditions, so the winner's is cached for the answer
+        List<DaylightRank> daylight = daylightAll(List.of(city1, city2), this::forecastAll);
+        if (!solarDaylight.ordersLikeForecasts(daylight.get(0), daylight.get(1))) {
+            // Too close for the computed daylight to call: compare the forecasts themselves, so the forecast returned
+            // never shows a shorter day than the other city's
+            List<CityInfo> forecasts = forecastAll(List.of(city1, city2));
+            return ResponseEntity.ok(WeatherComparisons.longerDaylight(forecasts.get(0), forecasts.get(1)));
         }
+        DaylightRank longer = WeatherComparisons.longerDaylight(daylight.get(0), daylight.get(1));
+
+        // Return the forecast of the city with the longest day
+        return ResponseEntity.ok(weatherService.forecastByCity(longer.city()));
     }
 
     /**
@@ -91,30 +145,181 @@ public class WeatherController {
     @GetMapping("/compare-rain")
     public ResponseEntity<List<CityInfo>> compareRain(@RequestParam("city1") String city1, @RequestParam("city2") String city2) {
 
-        // Get the forecast for the two cities
-        CityInfo cityInfo1 = weatherService.forecastByCity(city1);
-        CityInfo cityInfo2 = weatherService.forecastByCity(city2);
-
-        // Check if it is currently raining in the two cities
-        Boolean isRaining1 = cityInfo1.getCurrentConditions().toLowerCase().contains("rain");
-        Boolean isRaining2 = cityInfo2.getCurrentConditions().toLowerCase().contains("rain");
-        System.out.println(cityInfo1.getCurrentConditions());
-
-        // Return two cities when it is currently raining in both
-        if (isRaining1 && isRaining2) {
-            List<CityInfo> cities = List.of(cityInfo1, cityInfo2);
-            return ResponseEntity.ok(cities);
-            // Return the city where it is currently raining
-        } else if (isRaining1) {
-            return ResponseEntity.ok(List.of(cityInfo1));
-            //  Return the city where it is currently raining
-        } else if (isRaining2) {
-            return ResponseEntity.ok(List.of(cityInfo2));
-            // Return an empty list when it is not currently raining in both cities
-        } else {
-            return ResponseEntity.ok(List.of());
+        // Get the forecast for the two cities concurrently
+        List<CityInfo> forecasts = forecastAll(List.of(city1, city2));
+        List<CityInfo> raining = WeatherComparisons.raining(forecasts);
+
+        // Log a sample of the comparisons as key=value pairs, so busy periods don't flood the logs
+        if (log.isInfoEnabled() && ThreadLocalRandom.current().nextDouble() < logSampleRate) {
+            log.info("compare-rain city1=\"{}\" conditions1=\"{}\" city2=\"{}\" conditions2=\"{}\" raining={}",
+                    city1, forecasts.get(0).getCurrentConditions(), city2, forecasts.get(1).getCurrentConditions(), raining.size());
         }
+
+        // Return the cities where it is currently raining
+        return ResponseEntity.ok(raining);
     }
 
+    /**
+     * Given a list of city names, this method ranks the cities by the length of their daylight hours, longest first
+     * Cities with equal daylight hours share the same rank
+     *
+     * @param cities The names of the cities to compare
+     * @return List<DaylightRank>
+     */
+    @GetMapping("/compare-daylight/batch")
+    public ResponseEntity<List<DaylightRank>> compareDaylightBatch(@RequestParam("cities") List<String> cities) {
+
+        List<String> distinctCities = WeatherComparisons.distinctCities(cities, batchMaxCities);
+        List<DaylightRank> ranking = WeatherComparisons.rankByDaylight(daylightAll(distinctCities, this::currentConditionsAll));
+
+        return ResponseEntity.ok(ranking);
+    }
 
+    /**
+     * Given a list of city names, this method returns the cities where it is currently raining
+     * Cities are returned in the order they were requested, and an empty list is returned when it is raining in none of them
+     *
+     * @param cities The names of the cities to check
+     * @return List<CityInfo>
+     */
+    @GetMapping("/compare-rain/batch")
+    public ResponseEntity<List<CityInfo>> compareRainBatch(@RequestParam("cities") List<String> cities) {
+
+        List<CityInfo> raining = WeatherComparisons.raining(forecastAll(WeatherComparisons.distinctCities(cities, batchMaxCities)));
+
+        return ResponseEntity.ok(raining);
+    }
+
+    /**
+     * Given a list of city names, this method streams their forecasts as server-sent events instead of having
+     * the client poll: a "forecast" event with each city's current forecast, then one whenever it changes,
+     * and a "rain" event whenever it starts or stops raining in one of them
+     *
+     * @param cities The names of the cities to follow
+     * @return SseEmitter
+     */
+    @GetMapping(path = "/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@RequestParam("cities") List<String> cities) {
+
+        List<String> distinctCities = WeatherComparisons.distinctCities(cities, batchMaxCities);
+        SseEmitter emitter = new SseEmitter(subscriptionTimeout.toMillis());
+        ForecastSubscriptions.Subscription subscription =
+                forecastSubscriptions.subscribe(distinctCities,
+                        new SseForecastListener(emitter, subscriptionSendExecutor, subscriptionMaxPending));
+
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> subscription.cancel());
+        return emitter;
+    }
+
+    /**
+     * Looks up today's daylight for the given cities. Cities with a known location are answered by SolarDaylight;
+     * the others are looked up together to locate them and cross-check the result.
+     *
+     * @param cities The city names to look up
+     * @param lookup Looks up the unlocated cities: forecastAll or currentConditionsAll
+     * @return List<DaylightRank>, unranked, in the same order as the cities
+     */
+    private List<DaylightRank> daylightAll(List<String> cities, Function<List<String>, List<CityInfo>> lookup) {
+        DaylightRank[] daylight = new DaylightRank[cities.size()];
+        List<String> unresolved = new ArrayList<>();
+        for (int i = 0; i < daylight.length; i++) {
+            daylight[i] = solarDaylight.daylight(cities.get(i));
+            if (daylight[i] == null) {
+                unresolved.add(cities.get(i));
+            }
+        }
+
+        if (!unresolved.isEmpty()) {
+            List<CityInfo> forecasts = lookup.apply(unresolved);
+            for (int i = 0, j = 0; i < daylight.length; i++) {
+                if (daylight[i] == null) {
+                    daylight[i] = solarDaylight.resolve(cities.get(i), forecasts.get(j++));
+                }
+            }
+        }
+        return Arrays.asList(daylight);
+    }
+
+    /**
+     * Fetches the forecasts for the given cities concurrently on the upstream executor, at most batchConcurrency at a time.
+     * Cities are looked up in chunks of weather.visualcrossing.multi.max-locations, so uncached cities in a chunk
+     * share one upstream request.
+     * Fails as soon as any lookup fails, and with an UpstreamTimeoutException if they don't all finish within the compare timeout.
+     * Either way the remaining lookups are cancelled: queued ones never start, and running ones are interrupted, which
+     * stops them at their next rate limiter or bulkhead wait or chunk boundary (an upstream call already on the wire
+     * still runs to its read timeout).
+     *
+     * @param cities The city names to look up
+     * @return List<CityInfo> in the same order as the cities
+     */
+    private List<CityInfo> forecastAll(List<String> cities) {
+        return lookUpAll(cities, weatherService::forecastByCities);
+    }
+
+    /**
+     * Like forecastAll, but fetches only the cities' current conditions and location (see
+     * WeatherService.currentConditionsByCities), for comparisons that return nothing else
+     *
+     * @param cities The city names to look up
+     * @return List<CityInfo> holding current conditions only, in the same order as the cities
+     */
+    private List<CityInfo> currentConditionsAll(List<String> cities) {
+        return lookUpAll(cities, weatherService::currentConditionsByCities);
+    }
+
+    private List<CityInfo> lookUpAll(List<String> cities, Function<List<String>, List<CityInfo>> lookup) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < cities.size(); from += citiesPerRequest) {
+            chunks.add(cities.subList(from, Math.min(from + citiesPerRequest, cities.size())));
+        }
+
+        // Spread the chunks over at most batchConcurrency lanes; each lane fetches its chunks one after another
+        int lanes = Math.min(batchConcurrency, chunks.size());
+        List<List<CityInfo>> results = new ArrayList<>(Collections.nCopies(chunks.size(), null));
+        // Completes when every lane has finished, or exceptionally with the first failure so we don't wait on the rest
+        CompletableFuture<Void> finished = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(lanes);
+        List<Future<?>> tasks = new ArrayList<>(lanes);
+        try {
+            for (int lane = 0; lane < lanes; lane++) {
+                int first = lane;
+                tasks.add(upstreamExecutor.submit(() -> {
+                    try {
+                        for (int i = first; i < chunks.size() && !Thread.currentThread().isInterrupted(); i += lanes) {
+                            results.set(i, lookup.apply(chunks.get(i)));
+                        }
+                        if (running.decrementAndGet() == 0) {
+                            finished.complete(null);
+                        }
+                    } catch (Throwable e) {
+                        // Errors too, or the request would wait out the timeout for a lane that is never finishing
+                        finished.completeExceptionally(e);
+                    }
+                }));
+            }
+            finished.get(compareTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new UpstreamTimeoutException("Timed out fetching weather for " + String.join(", ", cities));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fetching weather", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Failed to fetch weather", e.getCause());
+        } finally {
+            // Also reached when the executor rejects a lane (TaskRejectedException, mapped by GlobalExceptionHandler)
+            if (!finished.isDone() || finished.isCompletedExceptionally()) {
+                tasks.forEach(task -> task.cancel(true));
+            }
+        }
+
+        return results.stream().flatMap(List::stream).toList();
+    }
 }
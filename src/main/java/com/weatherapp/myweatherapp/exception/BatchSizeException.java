@@ -0,0 +1,11 @@
+package com.weatherapp.myweatherapp.exception;
+
+/**
+ * Exception thrown when a batch comparison is requested for no cities or for more cities than allowed
+ */
+public class BatchSizeException extends RuntimeException {
+
+    public BatchSizeException(String message) {
+        super(message);
+    }
+}
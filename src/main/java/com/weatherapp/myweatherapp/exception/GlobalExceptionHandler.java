@@ -1,17 +1,69 @@
 package com.weatherapp.myweatherapp.exception;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * GlobalExceptionHandler class is used to handle the exceptions thrown by the application.
+ * Every handled exception is counted in "weather.errors", tagged with the exception type.
  */
 @RestControllerAdvice
 public class GlobalExceptionHandler {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
     @ExceptionHandler(DaylightException.class)
     public ResponseEntity<String> handleEqualDaylightException(DaylightException ex) {
+        count(ex);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(BatchSizeException.class)
+    public ResponseEntity<String> handleBatchSizeException(BatchSizeException ex) {
+        count(ex);
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
     }
+
+    @ExceptionHandler(UpstreamTimeoutException.class)
+    public ResponseEntity<String> handleUpstreamTimeoutException(UpstreamTimeoutException ex) {
+        count(ex);
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(UpstreamRateLimitException.class)
+    public ResponseEntity<String> handleUpstreamRateLimitException(UpstreamRateLimitException ex) {
+        count(ex);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    public ResponseEntity<String> handleUpstreamUnavailableException(UpstreamUnavailableException ex) {
+        count(ex);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
+    }
+
+    /**
+     * The upstream executor's queue is full (TaskRejectedException), so the lookups were never started
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> handleRejectedExecutionException(RejectedExecutionException ex) {
+        count(ex);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Too many weather lookups in progress, try again shortly");
+    }
+
+    private void count(RuntimeException ex) {
+        meterRegistry.counter("weather.errors", "exception", ex.getClass().getSimpleName()).increment();
+    }
 }
@@ -0,0 +1,11 @@
+package com.weatherapp.myweatherapp.exception;
+
+/**
+ * Exception thrown when a weather lookup would exceed the Visual Crossing API key's quota
+ */
+public class UpstreamRateLimitException extends RuntimeException {
+
+    public UpstreamRateLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.weatherapp.myweatherapp.exception;
+
+/**
+ * Exception thrown when the weather lookups for a request do not complete before its deadline
+ */
+public class UpstreamTimeoutException extends RuntimeException {
+
+    public UpstreamTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.weatherapp.myweatherapp.exception;
+
+/**
+ * Exception thrown when a weather lookup is refused without calling Visual Crossing,
+ * because its circuit breaker is open or too many calls are already in flight
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    public UpstreamUnavailableException(String message) {
+        super(message);
+    }
+}
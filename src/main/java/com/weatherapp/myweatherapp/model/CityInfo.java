@@ -1,75 +1,388 @@
 package com.weatherapp.myweatherapp.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalTime;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 
+/**
+ * Immutable forecast for one city. Numbers and times are stored typed (seconds of day, primitives) and the
+ * daylight length and rain flag are computed once when the forecast is read, so comparisons don't parse anything.
+ * The JSON written for clients keeps the original shape, including the text form of times and temperatures:
+ * a temperature is written as upstream sent it ("2", "14.70"), as when it was bound into a String.
+ */
+@JsonPropertyOrder({"sunrise", "sunset", "address", "description", "currentConditions", "days"})
 public class CityInfo {
 
-    @JsonProperty("address")
-    String address;
+    /**
+     * Marks a missing sunrise/sunset time
+     */
+    static final int NO_TIME = -1;
 
-    @JsonProperty("description")
-    String description;
+    // Writes forecasts as clients get them, for the version digest; the application's own mapper once it is running
+    private static volatile ObjectWriter clientWriter = new ObjectMapper().writerFor(CityInfo.class);
 
-    @JsonProperty("currentConditions")
-    CurrentConditions currentConditions;
+    private final String address;
 
-    @JsonProperty("days")
-    List<Days> days;
+    private final String description;
+
+    // Where the provider resolved the address to, in degrees (NaN when absent); not written for clients
+    private final double latitude;
+
+    private final double longitude;
+
+    final CurrentConditions currentConditions;
+
+    private final List<Days> days;
+
+    private final int daylightSeconds;
+
+    private final boolean raining;
+
+    // Digested on first use, not on construction; racing first calls compute the same value
+    private volatile String version;
+
+    CityInfo(String address, String description, double latitude, double longitude,
+             CurrentConditions currentConditions, List<Days> days) {
+        this.address = address;
+        this.description = description;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.currentConditions = currentConditions;
+        this.days = days != null ? List.copyOf(days) : null;
+
+        boolean hasDaylight = currentConditions != null
+                && currentConditions.sunriseSecond != NO_TIME && currentConditions.sunsetSecond != NO_TIME;
+        this.daylightSeconds = hasDaylight ? currentConditions.sunsetSecond - currentConditions.sunriseSecond : NO_TIME;
+        this.raining = currentConditions != null && currentConditions.conditions != null
+                && currentConditions.conditions.toLowerCase(Locale.ROOT).contains("rain");
+    }
+
+    /**
+     * Digests versions from the JSON this mapper writes, so they match the bodies actually sent to clients
+     */
+    public static void writeVersionsWith(ObjectMapper objectMapper) {
+        clientWriter = objectMapper.writerFor(CityInfo.class);
+    }
+
+    @JsonCreator
+    static CityInfo fromJson(@JsonProperty("address") String address,
+                             @JsonProperty("description") String description,
+                             @JsonProperty("latitude") Double latitude,
+                             @JsonProperty("longitude") Double longitude,
+                             @JsonProperty("currentConditions") CurrentConditions currentConditions,
+                             @JsonProperty("days") List<Days> days) {
+        return new CityInfo(address, description, toPrimitive(latitude), toPrimitive(longitude), currentConditions, days);
+    }
 
+    @JsonProperty("address")
+    public String getAddress() {
+        return address;
+    }
+
+    @JsonProperty("description")
+    public String getDescription() {
+        return description;
+    }
+
+    @JsonProperty("sunrise")
     public String getSunrise() {
-        return currentConditions != null ? currentConditions.sunrise : null;
+        return currentConditions != null ? formatTime(currentConditions.sunriseSecond) : null;
     }
 
+    @JsonProperty("sunset")
     public String getSunset() {
-        return currentConditions != null ? currentConditions.sunset : null;
+        return currentConditions != null ? formatTime(currentConditions.sunsetSecond) : null;
     }
 
+    @JsonProperty("currentConditions")
     public String getCurrentConditions() {
         return currentConditions != null ? currentConditions.conditions : null;
     }
 
+    @JsonProperty("days")
+    List<Days> getDays() {
+        return days;
+    }
+
+    /**
+     * Latitude of the resolved address in degrees, or NaN if the provider didn't send one
+     */
+    @JsonIgnore
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Longitude of the resolved address in degrees, or NaN if the provider didn't send one
+     */
+    @JsonIgnore
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Minutes between sunrise and sunset, computed when the forecast was read
+     *
+     * @throws IllegalStateException if the forecast has no sunrise or sunset
+     */
+    @JsonIgnore
+    public long getDaylightMinutes() {
+        if (daylightSeconds == NO_TIME) {
+            throw new IllegalStateException("No sunrise/sunset in the forecast for " + address);
+        }
+        return daylightSeconds / 60;
+    }
+
+    /**
+     * Whether the current conditions mention rain, computed when the forecast was read
+     */
+    @JsonIgnore
+    public boolean isRaining() {
+        return raining;
+    }
+
+    /**
+     * Whether both forecasts report the same current conditions, whatever else they hold, so a lookup of current
+     * conditions only can be checked against a full forecast
+     */
+    public boolean hasSameCurrentConditions(CityInfo other) {
+        return Objects.equals(currentConditions, other.currentConditions);
+    }
+
+    /**
+     * Digest of the JSON written for clients, as 32 hex digits. Forecasts that serialize identically share a version,
+     * whether they were fetched, refreshed or read back from the forecast store, so it can serve as a strong ETag.
+     */
+    @JsonIgnore
+    public String getVersion() {
+        String digested = version;
+        if (digested == null) {
+            digested = digest(this);
+            version = digested;
+        }
+        return digested;
+    }
+
+    /**
+     * The first 128 bits of the SHA-256 of the forecast's client JSON, streamed into the digest rather than buffered
+     */
+    private static String digest(CityInfo cityInfo) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        try (OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), sha256)) {
+            clientWriter.writeValue(out, cityInfo);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return HexFormat.of().formatHex(sha256.digest(), 0, 16);
+    }
+
+    /**
+     * Seconds of day for an "HH:mm:ss" time, or NO_TIME when absent
+     */
+    static int parseTime(String time) {
+        return time == null || time.isEmpty() ? NO_TIME : LocalTime.parse(time).toSecondOfDay();
+    }
+
+    /**
+     * "HH:mm:ss" for a second of day (LocalTime.toString would drop ":00" seconds)
+     */
+    static String formatTime(int secondOfDay) {
+        if (secondOfDay == NO_TIME) {
+            return null;
+        }
+        int hours = secondOfDay / 3600;
+        int minutes = secondOfDay / 60 % 60;
+        int seconds = secondOfDay % 60;
+        return new String(new char[]{
+                (char) ('0' + hours / 10), (char) ('0' + hours % 10), ':',
+                (char) ('0' + minutes / 10), (char) ('0' + minutes % 10), ':',
+                (char) ('0' + seconds / 10), (char) ('0' + seconds % 10)});
+    }
+
+    /**
+     * Text form of a number: without a fraction when it is integral ("2"), Double.toString otherwise,
+     * or null when absent (NaN)
+     */
+    static String formatNumber(double value) {
+        if (Double.isNaN(value)) {
+            return null;
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * The text upstream sent for a number, kept only when formatNumber wouldn't give it back ("14.70", "2.0", "1e1"),
+     * so most forecasts hold no extra strings
+     */
+    static String keepText(double value, String text) {
+        return text == null || text.equals(formatNumber(value)) ? null : text;
+    }
+
+    /**
+     * Number parsed from its upstream text, or NaN when absent
+     */
+    static double parseNumber(String text) {
+        return text == null || text.isBlank() ? Double.NaN : Double.parseDouble(text);
+    }
+
+    static double toPrimitive(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
     static class CurrentConditions {
-        @JsonProperty("temp")
-        String currentTemperature;
+        final double currentTemperature;
 
-        @JsonProperty("sunrise")
-        String sunrise;
+        final int sunriseSecond;
 
-        @JsonProperty("sunset")
-        String sunset;
+        final int sunsetSecond;
 
-        @JsonProperty("feelslike")
-        String feelslike;
+        final double feelslike;
 
-        @JsonProperty("humidity")
-        String humidity;
+        final double humidity;
 
-        @JsonProperty("conditions")
-        String conditions;
+        final String conditions;
+
+        CurrentConditions(double currentTemperature, int sunriseSecond, int sunsetSecond,
+                          double feelslike, double humidity, String conditions) {
+            this.currentTemperature = currentTemperature;
+            this.sunriseSecond = sunriseSecond;
+            this.sunsetSecond = sunsetSecond;
+            this.feelslike = feelslike;
+            this.humidity = humidity;
+            this.conditions = conditions;
+        }
+
+        @JsonCreator
+        static CurrentConditions fromJson(@JsonProperty("temp") Double currentTemperature,
+                                          @JsonProperty("sunrise") String sunrise,
+                                          @JsonProperty("sunset") String sunset,
+                                          @JsonProperty("feelslike") Double feelslike,
+                                          @JsonProperty("humidity") Double humidity,
+                                          @JsonProperty("conditions") String conditions) {
+            return new CurrentConditions(toPrimitive(currentTemperature), parseTime(sunrise), parseTime(sunset),
+                    toPrimitive(feelslike), toPrimitive(humidity), conditions);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CurrentConditions that
+                    && Double.compare(currentTemperature, that.currentTemperature) == 0
+                    && sunriseSecond == that.sunriseSecond
+                    && sunsetSecond == that.sunsetSecond
+                    && Double.compare(feelslike, that.feelslike) == 0
+                    && Double.compare(humidity, that.humidity) == 0
+                    && Objects.equals(conditions, that.conditions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(currentTemperature, sunriseSecond, sunsetSecond, feelslike, humidity, conditions);
+        }
     }
 
+    @JsonPropertyOrder({"datetime", "temp", "tempmax", "tempmin", "conditions", "description"})
     static class Days {
 
+        final String date;
+
+        final double currentTemperature;
+
+        final double maxTemperature;
+
+        final double minTemperature;
+
+        // Upstream text of each temperature when formatNumber doesn't reproduce it, otherwise null (see keepText)
+        final String currentTemperatureText;
+
+        final String maxTemperatureText;
+
+        final String minTemperatureText;
+
+        final String conditions;
+
+        final String description;
+
+        Days(String date, double currentTemperature, String currentTemperatureText,
+             double maxTemperature, String maxTemperatureText, double minTemperature, String minTemperatureText,
+             String conditions, String description) {
+            this.date = date;
+            this.currentTemperature = currentTemperature;
+            this.maxTemperature = maxTemperature;
+            this.minTemperature = minTemperature;
+            this.currentTemperatureText = keepText(currentTemperature, currentTemperatureText);
+            this.maxTemperatureText = keepText(maxTemperature, maxTemperatureText);
+            this.minTemperatureText = keepText(minTemperature, minTemperatureText);
+            this.conditions = conditions;
+            this.description = description;
+        }
+
+        /**
+         * Temperatures are bound as text, which Jackson takes verbatim from number tokens, so it can be written back unchanged
+         */
+        @JsonCreator
+        static Days fromJson(@JsonProperty("datetime") String date,
+                             @JsonProperty("temp") String currentTemperature,
+                             @JsonProperty("tempmax") String maxTemperature,
+                             @JsonProperty("tempmin") String minTemperature,
+                             @JsonProperty("conditions") String conditions,
+                             @JsonProperty("description") String description) {
+            return new Days(date, parseNumber(currentTemperature), currentTemperature,
+                    parseNumber(maxTemperature), maxTemperature, parseNumber(minTemperature), minTemperature,
+                    conditions, description);
+        }
+
         @JsonProperty("datetime")
-        String date;
+        String getDate() {
+            return date;
+        }
 
         @JsonProperty("temp")
-        String currentTemperature;
+        String getCurrentTemperature() {
+            return currentTemperatureText != null ? currentTemperatureText : formatNumber(currentTemperature);
+        }
 
         @JsonProperty("tempmax")
-        String maxTemperature;
+        String getMaxTemperature() {
+            return maxTemperatureText != null ? maxTemperatureText : formatNumber(maxTemperature);
+        }
 
         @JsonProperty("tempmin")
-        String minTemperature;
+        String getMinTemperature() {
+            return minTemperatureText != null ? minTemperatureText : formatNumber(minTemperature);
+        }
 
         @JsonProperty("conditions")
-        String conditions;
+        String getConditions() {
+            return conditions;
+        }
 
         @JsonProperty("description")
-        String description;
-
+        String getDescription() {
+            return description;
+        }
     }
 
 }
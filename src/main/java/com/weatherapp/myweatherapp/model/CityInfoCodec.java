@@ -0,0 +1,113 @@
+package com.weatherapp.myweatherapp.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a CityInfo, used by the on-disk forecast store and the shared forecast cache.
+ * Times are written as seconds of day and numbers as doubles, so reading a forecast back involves no parsing;
+ * the few temperatures whose upstream text differs from their formatted value carry that text as well.
+ */
+public final class CityInfoCodec {
+
+    /**
+     * Bumped whenever the layout changes; forecasts written with another version are not read back
+     */
+    static final byte VERSION = 3;
+
+    private CityInfoCodec() {
+    }
+
+    public static void write(DataOutput out, CityInfo cityInfo) throws IOException {
+        out.writeByte(VERSION);
+        writeString(out, cityInfo.getAddress());
+        writeString(out, cityInfo.getDescription());
+        out.writeDouble(cityInfo.getLatitude());
+        out.writeDouble(cityInfo.getLongitude());
+
+        CityInfo.CurrentConditions current = cityInfo.currentConditions;
+        out.writeBoolean(current != null);
+        if (current != null) {
+            out.writeDouble(current.currentTemperature);
+            out.writeInt(current.sunriseSecond);
+            out.writeInt(current.sunsetSecond);
+            out.writeDouble(current.feelslike);
+            out.writeDouble(current.humidity);
+            writeString(out, current.conditions);
+        }
+
+        List<CityInfo.Days> days = cityInfo.getDays();
+        out.writeInt(days != null ? days.size() : -1);
+        if (days != null) {
+            for (CityInfo.Days day : days) {
+                writeString(out, day.date);
+                out.writeDouble(day.currentTemperature);
+                writeString(out, day.currentTemperatureText);
+                out.writeDouble(day.maxTemperature);
+                writeString(out, day.maxTemperatureText);
+                out.writeDouble(day.minTemperature);
+                writeString(out, day.minTemperatureText);
+                writeString(out, day.conditions);
+                writeString(out, day.description);
+            }
+        }
+    }
+
+    /**
+     * @throws IOException if the data is truncated or was written with another version of the encoding
+     */
+    public static CityInfo read(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported forecast encoding version " + version);
+        }
+        String address = readString(in);
+        String description = readString(in);
+        double latitude = in.readDouble();
+        double longitude = in.readDouble();
+
+        CityInfo.CurrentConditions current = null;
+        if (in.readBoolean()) {
+            current = new CityInfo.CurrentConditions(in.readDouble(), in.readInt(), in.readInt(),
+                    in.readDouble(), in.readDouble(), readString(in));
+        }
+
+        int dayCount = in.readInt();
+        List<CityInfo.Days> days = null;
+        if (dayCount >= 0) {
+            days = new ArrayList<>(dayCount);
+            for (int i = 0; i < dayCount; i++) {
+                days.add(new CityInfo.Days(readString(in), in.readDouble(), readString(in), in.readDouble(), readString(in),
+                        in.readDouble(), readString(in), readString(in), readString(in)));
+            }
+        }
+        return new CityInfo(address, description, latitude, longitude, current, days);
+    }
+
+    /**
+     * Length-prefixed UTF-8, with -1 for null (DataOutput.writeUTF can't hold null or more than 64KB)
+     */
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,191 @@
+package com.weatherapp.myweatherapp.model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a Visual Crossing timeline response into a CityInfo without data binding.
+ * Only the fields CityInfo maps are read; everything else (hours, stations, alerts, ...) is skipped token by token
+ * without being turned into strings or objects.
+ */
+public final class CityInfoParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private CityInfoParser() {
+    }
+
+    public static CityInfo parse(InputStream in) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            parser.nextToken();
+            return parse(parser);
+        }
+    }
+
+    public static CityInfo parse(byte[] json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            parser.nextToken();
+            return parse(parser);
+        }
+    }
+
+    /**
+     * Reads a timelinemulti response, returning one CityInfo per entry of its "locations" array, in order
+     */
+    public static List<CityInfo> parseLocations(InputStream in) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            parser.nextToken();
+            expect(parser, JsonToken.START_OBJECT);
+
+            List<CityInfo> locations = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (field.equals("locations")) {
+                    expect(parser, JsonToken.START_ARRAY);
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        locations.add(parse(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return locations;
+        }
+    }
+
+    /**
+     * Reads one timeline object; the parser must be positioned on its START_OBJECT token
+     */
+    public static CityInfo parse(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_OBJECT);
+
+        String address = null;
+        String description = null;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        CityInfo.CurrentConditions currentConditions = null;
+        List<CityInfo.Days> days = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "address" -> address = text(parser);
+                case "description" -> description = text(parser);
+                case "latitude" -> latitude = number(parser);
+                case "longitude" -> longitude = number(parser);
+                case "currentConditions" -> currentConditions = parseCurrentConditions(parser);
+                case "days" -> days = parseDays(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return new CityInfo(address, description, latitude, longitude, currentConditions, days);
+    }
+
+    private static CityInfo.CurrentConditions parseCurrentConditions(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_OBJECT);
+
+        double temperature = Double.NaN;
+        int sunrise = CityInfo.NO_TIME;
+        int sunset = CityInfo.NO_TIME;
+        double feelslike = Double.NaN;
+        double humidity = Double.NaN;
+        String conditions = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "temp" -> temperature = number(parser);
+                case "sunrise" -> sunrise = CityInfo.parseTime(text(parser));
+                case "sunset" -> sunset = CityInfo.parseTime(text(parser));
+                case "feelslike" -> feelslike = number(parser);
+                case "humidity" -> humidity = number(parser);
+                case "conditions" -> conditions = text(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return new CityInfo.CurrentConditions(temperature, sunrise, sunset, feelslike, humidity, conditions);
+    }
+
+    private static List<CityInfo.Days> parseDays(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_ARRAY);
+
+        List<CityInfo.Days> days = new ArrayList<>(16);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            expect(parser, JsonToken.START_OBJECT);
+            String date = null;
+            String temperature = null;
+            String maxTemperature = null;
+            String minTemperature = null;
+            String conditions = null;
+            String description = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "datetime" -> date = text(parser);
+                    // Kept as text too, so they are written back for clients exactly as sent
+                    case "temp" -> temperature = text(parser);
+                    case "tempmax" -> maxTemperature = text(parser);
+                    case "tempmin" -> minTemperature = text(parser);
+                    case "conditions" -> conditions = text(parser);
+                    case "description" -> description = text(parser);
+                    // "hours" is by far the largest part of the payload
+                    default -> parser.skipChildren();
+                }
+            }
+            days.add(new CityInfo.Days(date, CityInfo.parseNumber(temperature), temperature,
+                    CityInfo.parseNumber(maxTemperature), maxTemperature, CityInfo.parseNumber(minTemperature), minTemperature,
+                    conditions, description));
+        }
+        return days;
+    }
+
+    /**
+     * Numeric value (numbers sent as strings are accepted too), or NaN when absent
+     */
+    private static double number(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token.isNumeric()) {
+            return parser.getDoubleValue();
+        }
+        return CityInfo.parseNumber(text(parser));
+    }
+
+    /**
+     * Scalar value as text
+     */
+    private static String text(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getText();
+    }
+
+    private static void expect(JsonParser parser, JsonToken expected) throws IOException {
+        if (parser.currentToken() != expected) {
+            throw new IOException("Expected " + expected + " but found " + parser.currentToken()
+                    + " at " + parser.currentLocation());
+        }
+    }
+}
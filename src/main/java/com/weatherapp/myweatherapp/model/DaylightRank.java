@@ -0,0 +1,12 @@
+package com.weatherapp.myweatherapp.model;
+
+/**
+ * A city's position in a daylight ranking, longest day first
+ *
+ * @param rank            1-based position; cities with equal daylight share a rank
+ * @param city            The city name as requested
+ * @param address         The address resolved by the weather provider
+ * @param daylightMinutes Minutes between sunrise and sunset
+ */
+public record DaylightRank(int rank, String city, String address, long daylightMinutes) {
+}
@@ -0,0 +1,28 @@
+package com.weatherapp.myweatherapp.model;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * Reflection hints for a native image build (mvn -Pnative native:compile).
+ * Jackson binds CityInfo through package-private getters and @JsonCreator factories, some on package-private
+ * nested classes, none of which the hints Spring infers from controller signatures reach, so they are listed here.
+ */
+public class ModelRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final MemberCategory[] BINDING = {
+            MemberCategory.DECLARED_FIELDS,
+            MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+            MemberCategory.INVOKE_DECLARED_METHODS};
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        hints.reflection()
+                .registerType(CityInfo.class, BINDING)
+                .registerType(CityInfo.CurrentConditions.class, BINDING)
+                .registerType(CityInfo.Days.class, BINDING)
+                .registerType(DaylightRank.class, BINDING)
+                .registerType(RainChange.class, BINDING);
+    }
+}
@@ -0,0 +1,22 @@
+package com.weatherapp.myweatherapp.model;
+
+/**
+ * Rain starting or stopping in a subscribed city, as seen between two forecasts
+ *
+ * @param city              The subscribed city, normalized
+ * @param address           The address resolved by the weather provider
+ * @param raining           Whether it is raining now
+ * @param currentConditions The current conditions that were checked for rain
+ */
+public record RainChange(String city, String address, boolean raining, String currentConditions) {
+
+    /**
+     * The change from previous to current, or null if it is raining in both or neither (or there is no previous forecast)
+     */
+    public static RainChange between(String city, CityInfo previous, CityInfo current) {
+        if (previous == null || previous.isRaining() == current.isRaining()) {
+            return null;
+        }
+        return new RainChange(city, current.getAddress(), current.isRaining(), current.getCurrentConditions());
+    }
+}
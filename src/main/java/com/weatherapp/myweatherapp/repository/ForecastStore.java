@@ -0,0 +1,346 @@
+package com.weatherapp.myweatherapp.repository;
+
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoCodec;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of fetched forecasts, read back at startup so a restart begins with a warm cache
+ * instead of refetching every city from Visual Crossing.
+ * <p>
+ * Each record is [payload length][CRC32 of payload][payload], the payload being the fetch time, the cache key and
+ * the CityInfoCodec encoding. A crash can at worst leave a torn record at the end of the file; reading stops there.
+ * Records older than weather.store.max-age are ignored. Once the file passes weather.store.max-file-size it is
+ * compacted in the background to the latest record per city, written to a temp file and atomically moved into place.
+ * The store is off when weather.store.path is blank; storage problems are logged and never fail a request.
+ */
+@Repository
+public class ForecastStore {
+
+  private static final Logger log = LoggerFactory.getLogger(ForecastStore.class);
+
+  // Sanity limit on a record's length, so a corrupt header can't make us allocate gigabytes
+  private static final int MAX_RECORD_BYTES = 1 << 20;
+
+  private static final int HEADER_BYTES = Integer.BYTES * 2;
+
+  @Value("${weather.store.path:}")
+  String path;
+
+  @Value("${weather.store.max-age:1h}")
+  Duration maxAge;
+
+  @Value("${weather.store.max-file-size:64MB}")
+  DataSize maxFileSize;
+
+  // Compaction runs off the request path
+  @Autowired
+  @Qualifier("forecastRefreshExecutor")
+  Executor compactionExecutor;
+
+  Clock clock = Clock.systemUTC();
+
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  private final AtomicBoolean compacting = new AtomicBoolean();
+
+  private FileChannel channel;
+
+  @PostConstruct
+  void open() {
+    if (!isEnabled()) {
+      return;
+    }
+    try {
+      Path file = Path.of(path);
+      if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      log.warn("Forecast store disabled, cannot open {}", path, e);
+      path = null;
+    }
+  }
+
+  @PreDestroy
+  void close() throws IOException {
+    writeLock.lock();
+    try {
+      if (channel != null) {
+        channel.close();
+        channel = null;
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  public boolean isEnabled() {
+    return path != null && !path.isBlank();
+  }
+
+  /**
+   * A forecast read back from the store, with how long ago it was fetched
+   */
+  public record LoadedForecast(CityInfo cityInfo, Duration age) {
+  }
+
+  /**
+   * Reads the latest stored forecast per city that is younger than the max age, and compacts the file to just those.
+   *
+   * @return forecasts by cache key, oldest first
+   */
+  public Map<String, LoadedForecast> load() {
+    if (!isEnabled()) {
+      return Map.of();
+    }
+    writeLock.lock();
+    try {
+      long start = System.nanoTime();
+      Map<String, StoredForecast> latest = readLatest(channel.size());
+      rewrite(latest, channel.size());
+      long now = clock.millis();
+      Map<String, LoadedForecast> forecasts = new LinkedHashMap<>();
+      latest.forEach((key, stored) -> forecasts.put(key,
+          new LoadedForecast(stored.cityInfo(), Duration.ofMillis(Math.max(0, now - stored.fetchedAt())))));
+      log.info("Loaded {} stored forecasts from {} in {} ms", forecasts.size(), path, (System.nanoTime() - start) / 1_000_000);
+      return forecasts;
+    } catch (IOException e) {
+      log.warn("Could not read forecast store {}", path, e);
+      return Map.of();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Appends a freshly fetched forecast; compaction is scheduled when the file has grown past its limit
+   */
+  public void append(String key, CityInfo cityInfo) {
+    if (!isEnabled()) {
+      return;
+    }
+    long size;
+    writeLock.lock();
+    try {
+      if (channel == null) {
+        return;
+      }
+      channel.write(encode(key, clock.millis(), cityInfo), channel.size());
+      size = channel.size();
+    } catch (IOException e) {
+      log.warn("Could not store forecast for {} in {}", key, path, e);
+      return;
+    } finally {
+      writeLock.unlock();
+    }
+    if (size > maxFileSize.toBytes() && compacting.compareAndSet(false, true)) {
+      try {
+        compactionExecutor.execute(() -> {
+          try {
+            compact();
+          } finally {
+            compacting.set(false);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // The forecast is stored; a later append tries the compaction again
+        compacting.set(false);
+        log.warn("Could not schedule compaction of forecast store {}", path, e);
+      }
+    }
+  }
+
+  /**
+   * Rewrites the file with the latest record per city. The bulk of the work happens without the write lock;
+   * records appended meanwhile are copied over at the end.
+   */
+  void compact() {
+    try {
+      long end;
+      writeLock.lock();
+      try {
+        end = channel.size();
+      } finally {
+        writeLock.unlock();
+      }
+      Map<String, StoredForecast> latest = readLatest(end);
+
+      writeLock.lock();
+      try {
+        rewrite(latest, end);
+      } finally {
+        writeLock.unlock();
+      }
+    } catch (IOException e) {
+      log.warn("Could not compact forecast store {}", path, e);
+    }
+  }
+
+  /**
+   * Latest record per key among the first {@code end} bytes, skipping expired ones and stopping at a torn or corrupt record
+   */
+  private Map<String, StoredForecast> readLatest(long end) throws IOException {
+    Map<String, StoredForecast> latest = new LinkedHashMap<>();
+    long oldestAllowed = clock.millis() - maxAge.toMillis();
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new ChannelInputStream(channel, end), 64 * 1024));
+    StoredForecast stored;
+    while ((stored = readRecord(in)) != null) {
+      // Re-insert so the map stays ordered by fetch time
+      latest.remove(stored.key());
+      if (stored.cityInfo() != null && stored.fetchedAt() >= oldestAllowed) {
+        latest.put(stored.key(), stored);
+      }
+    }
+    return latest;
+  }
+
+  /**
+   * Next valid record, or null at the end of the data or at the first torn or corrupt record.
+   * A record from an older encoding comes back without its CityInfo.
+   */
+  private StoredForecast readRecord(DataInputStream in) throws IOException {
+    try {
+      int length = in.readInt();
+      int crc = in.readInt();
+      if (length <= 0 || length > MAX_RECORD_BYTES) {
+        log.warn("Forecast store {} has a corrupt record header, ignoring the rest of the file", path);
+        return null;
+      }
+      byte[] payload = new byte[length];
+      in.readFully(payload);
+      if (crc(payload) != crc) {
+        log.warn("Forecast store {} has a corrupt record, ignoring the rest of the file", path);
+        return null;
+      }
+      DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+      long fetchedAt = record.readLong();
+      String key = record.readUTF();
+      try {
+        return new StoredForecast(key, fetchedAt, CityInfoCodec.read(record));
+      } catch (IOException e) {
+        return new StoredForecast(key, fetchedAt, null);
+      }
+    } catch (EOFException e) {
+      // Clean end of file, or a record torn by a crash
+      return null;
+    }
+  }
+
+  /**
+   * Replaces the file with the given records followed by whatever was appended after {@code end}.
+   * Must hold the write lock.
+   */
+  private void rewrite(Map<String, StoredForecast> records, long end) throws IOException {
+    Path file = Path.of(path);
+    Path temp = file.resolveSibling(file.getFileName() + ".compact");
+    try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (StoredForecast stored : records.values()) {
+        out.write(encode(stored.key(), stored.fetchedAt(), stored.cityInfo()));
+      }
+      for (long position = end, size = channel.size(); position < size; ) {
+        position += channel.transferTo(position, size - position, out);
+      }
+      out.force(true);
+    }
+    channel.close();
+    try {
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+  }
+
+  private static ByteBuffer encode(String key, long fetchedAt, CityInfo cityInfo) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(2048);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0);
+    out.writeInt(0);
+    out.writeLong(fetchedAt);
+    out.writeUTF(key);
+    CityInfoCodec.write(out, cityInfo);
+
+    ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+    int length = record.capacity() - HEADER_BYTES;
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), HEADER_BYTES, length);
+    record.putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue());
+    return record;
+  }
+
+  private static int crc(byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+
+  private record StoredForecast(String key, long fetchedAt, CityInfo cityInfo) {
+  }
+
+  /**
+   * Reads the first {@code limit} bytes of the channel with positional reads, so it neither moves nor closes
+   * the shared channel and doesn't run into records appended while it is reading
+   */
+  private static final class ChannelInputStream extends InputStream {
+    private final FileChannel channel;
+    private final long limit;
+    private long position;
+
+    ChannelInputStream(FileChannel channel, long limit) {
+      this.channel = channel;
+      this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (position >= limit) {
+        return -1;
+      }
+      int read = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, limit - position)), position);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.weatherapp.myweatherapp.repository;
+
+import com.weatherapp.myweatherapp.model.CityInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+/**
+ * Non-blocking variant of VisualcrossingRepository used by the reactive stack
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveVisualcrossingRepository {
+
+  @Value("${weather.visualcrossing.url}")
+  String url;
+  @Value("${weather.visualcrossing.key}")
+  String key;
+  @Value("${weather.visualcrossing.include:}")
+  String include;
+  @Value("${weather.visualcrossing.elements:}")
+  String elements;
+
+  @Autowired
+  WebClient visualcrossingWebClient;
+
+  @Autowired
+  VisualcrossingResilience resilience;
+
+  @Autowired
+  ObservationRegistry observationRegistry;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  public Mono<CityInfo> getByCity(String city) {
+    // A plain URI rather than a template, so the WebClient's own metrics don't tag requests with the key and city
+    URI uri = UriComponentsBuilder.fromHttpUrl(TimelineUris.timeline(url, city, key, TimelineQuery.of(include, elements)))
+        .encode()
+        .build()
+        .toUri();
+    // Calls refused by the rate limiters, bulkhead or circuit breaker never reach Visual Crossing
+    return resilience.call(Mono.defer(() -> {
+      Observation observation = UpstreamObservations.start(observationRegistry, city);
+      return visualcrossingWebClient.get()
+          .uri(uri)
+          .retrieve()
+          .toEntity(CityInfo.class)
+          .doOnNext(response -> UpstreamObservations.success(observation, response.getStatusCode().value()))
+          .doOnError(e -> UpstreamObservations.failure(observation, meterRegistry, e))
+          .doOnCancel(observation::stop)
+          .mapNotNull(ResponseEntity::getBody);
+    }));
+  }
+}
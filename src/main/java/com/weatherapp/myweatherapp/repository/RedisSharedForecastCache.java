@@ -0,0 +1,211 @@
+package com.weatherapp.myweatherapp.repository;
+
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoCodec;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SharedForecastCache on any server speaking the Redis protocol (Redis, Valkey, KeyDB, ...).
+ * <p>
+ * A forecast is stored under weather:forecast:{city} as [fetch time][CityInfoCodec encoding] and expires with the
+ * cache TTL. The refresh lock is weather:forecast-lock:{city}, taken with SET NX PX so a node that dies mid-fetch
+ * only holds it for the lease. Each acquisition stores its own token, and unlocking deletes the key only if it still
+ * holds that token (checked and deleted in one script), so a fetch that outlives its lease can't release the lock
+ * another node has taken since. All nodes share one pipelined connection each; connects and commands time out
+ * quickly and any failure is logged, counted and treated as a miss.
+ */
+public class RedisSharedForecastCache implements SharedForecastCache {
+
+  private static final Logger log = LoggerFactory.getLogger(RedisSharedForecastCache.class);
+
+  private static final String FORECAST_KEY = "weather:forecast:";
+
+  private static final String LOCK_KEY = "weather:forecast-lock:";
+
+  private static final long CONNECT_RETRY_MILLIS = 5000;
+
+  // Prefixes lock tokens, to identify the holder when inspecting the server
+  private static final String NODE = ManagementFactory.getRuntimeMXBean().getName();
+
+  // Deletes the lock only if it still holds the caller's token
+  private static final String UNLOCK_SCRIPT =
+      "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
+  private final RedisClient client;
+
+  private final Duration ttl;
+
+  private final Duration lockLease;
+
+  private final Counter hits;
+
+  private final Counter misses;
+
+  private final Counter errors;
+
+  private volatile StatefulRedisConnection<String, byte[]> connection;
+
+  // Held while connecting; callers arriving meanwhile fail fast rather than queue up behind the connect
+  private final ReentrantLock connecting = new ReentrantLock();
+
+  // After a failed connect, calls fail fast until this time instead of each waiting out the connect timeout
+  private volatile long retryConnectAt;
+
+  Clock clock = Clock.systemUTC();
+
+  /**
+   * @param url       redis://[password@]host:port[/database], or rediss:// for TLS
+   * @param ttl       How long a shared forecast is kept
+   * @param lockLease How long a refresh lock is held at most
+   * @param timeout   Timeout for opening the connection (SocketOptions) and for each command (TimeoutOptions)
+   */
+  public RedisSharedForecastCache(String url, Duration ttl, Duration lockLease, Duration timeout, MeterRegistry meterRegistry) {
+    RedisURI uri = RedisURI.create(url);
+    uri.setTimeout(timeout);
+    this.client = RedisClient.create(uri);
+    // RESP2 is understood by every Redis-compatible server; reconnects happen in the background
+    client.setOptions(ClientOptions.builder()
+        .protocolVersion(ProtocolVersion.RESP2)
+        .socketOptions(SocketOptions.builder().connectTimeout(timeout).build())
+        .timeoutOptions(TimeoutOptions.enabled(timeout))
+        .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+        .build());
+    this.ttl = ttl;
+    this.lockLease = lockLease;
+    this.hits = sharedCacheCounter(meterRegistry, "hit");
+    this.misses = sharedCacheCounter(meterRegistry, "miss");
+    this.errors = sharedCacheCounter(meterRegistry, "error");
+  }
+
+  private static Counter sharedCacheCounter(MeterRegistry meterRegistry, String result) {
+    return Counter.builder("weather.shared-cache.requests")
+        .description("Shared forecast cache lookups by result")
+        .tag("result", result)
+        .register(meterRegistry);
+  }
+
+  @Override
+  public Optional<SharedForecast> get(String city, Duration maxAge) {
+    try {
+      byte[] value = commands().get(FORECAST_KEY + city);
+      if (value != null) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+        long age = Math.max(0, clock.millis() - in.readLong());
+        if (age <= maxAge.toMillis()) {
+          hits.increment();
+          return Optional.of(new SharedForecast(CityInfoCodec.read(in), Duration.ofMillis(age)));
+        }
+      }
+      misses.increment();
+    } catch (IOException | RuntimeException e) {
+      failed("read", city, e);
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  public void put(String city, CityInfo cityInfo) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeLong(clock.millis());
+      CityInfoCodec.write(out, cityInfo);
+      commands().set(FORECAST_KEY + city, bytes.toByteArray(), SetArgs.Builder.px(ttl));
+    } catch (IOException | RuntimeException e) {
+      failed("write", city, e);
+    }
+  }
+
+  @Override
+  public Optional<String> tryLock(String city) {
+    String token = NODE + "/" + UUID.randomUUID();
+    try {
+      String reply = commands().set(LOCK_KEY + city, token.getBytes(StandardCharsets.UTF_8), SetArgs.Builder.nx().px(lockLease));
+      return "OK".equals(reply) ? Optional.of(token) : Optional.empty();
+    } catch (RuntimeException e) {
+      failed("lock", city, e);
+      return Optional.of(token);
+    }
+  }
+
+  @Override
+  public void unlock(String city, String token) {
+    try {
+      commands().eval(UNLOCK_SCRIPT, ScriptOutputType.INTEGER, new String[]{LOCK_KEY + city},
+          token.getBytes(StandardCharsets.UTF_8));
+    } catch (RuntimeException e) {
+      failed("unlock", city, e);
+    }
+  }
+
+  private void failed(String operation, String city, Exception e) {
+    errors.increment();
+    log.warn("Shared forecast cache {} failed for {}: {}", operation, city, e.toString());
+  }
+
+  /**
+   * Connects on first use, so the app starts (and serves from upstream) while the shared cache is down.
+   * One caller connects, bounded by the connect timeout; the others fail fast in the meantime.
+   */
+  private RedisCommands<String, byte[]> commands() {
+    StatefulRedisConnection<String, byte[]> current = connection;
+    if (current == null) {
+      if (clock.millis() < retryConnectAt || !connecting.tryLock()) {
+        throw new IllegalStateException("Not connected to the shared forecast cache");
+      }
+      try {
+        current = connection;
+        if (current == null) {
+          try {
+            current = client.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
+          } catch (RuntimeException e) {
+            retryConnectAt = clock.millis() + CONNECT_RETRY_MILLIS;
+            throw e;
+          }
+          connection = current;
+        }
+      } finally {
+        connecting.unlock();
+      }
+    }
+    return current.sync();
+  }
+
+  @Override
+  public void close() {
+    StatefulRedisConnection<String, byte[]> current = connection;
+    if (current != null) {
+      current.close();
+    }
+    client.shutdown();
+  }
+}
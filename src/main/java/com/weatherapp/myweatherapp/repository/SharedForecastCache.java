@@ -0,0 +1,76 @@
+package com.weatherapp.myweatherapp.repository;
+
+import com.weatherapp.myweatherapp.model.CityInfo;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Second-level forecast cache shared by every replica, behind each node's in-memory cache (see WeatherService).
+ * A forecast fetched by one node is served to the others from here instead of being fetched again, and the
+ * per-city refresh lock makes sure only one node at a time goes upstream for a given city.
+ * <p>
+ * Implementations never throw: a shared tier that can't be reached behaves as an empty one whose locks are
+ * always granted, so every node falls back to fetching for itself.
+ */
+public interface SharedForecastCache extends AutoCloseable {
+
+  /**
+   * A shared forecast and how long ago it was fetched from upstream
+   */
+  record SharedForecast(CityInfo cityInfo, Duration age) {
+  }
+
+  /**
+   * The shared forecast for the city, if one was fetched within maxAge
+   */
+  Optional<SharedForecast> get(String city, Duration maxAge);
+
+  /**
+   * Shares a forecast that was just fetched from upstream
+   */
+  void put(String city, CityInfo cityInfo);
+
+  /**
+   * Takes the city's refresh lock for a limited lease
+   *
+   * @return The token this acquisition unlocks with, or empty if another node holds the lock,
+   * i.e. is fetching the city right now
+   */
+  Optional<String> tryLock(String city);
+
+  /**
+   * Releases the city's refresh lock if it is still the one taken with the token; once the lease has run out
+   * and someone else holds the lock, theirs is left alone
+   */
+  void unlock(String city, String token);
+
+  @Override
+  default void close() {
+  }
+
+  /**
+   * No shared tier: nothing is ever found and every lock is granted, so each node fetches for itself
+   */
+  static SharedForecastCache none() {
+    return new SharedForecastCache() {
+      @Override
+      public Optional<SharedForecast> get(String city, Duration maxAge) {
+        return Optional.empty();
+      }
+
+      @Override
+      public void put(String city, CityInfo cityInfo) {
+      }
+
+      @Override
+      public Optional<String> tryLock(String city) {
+        return Optional.of("");
+      }
+
+      @Override
+      public void unlock(String city, String token) {
+      }
+    };
+  }
+}
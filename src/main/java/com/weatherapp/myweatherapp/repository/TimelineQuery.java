@@ -0,0 +1,34 @@
+package com.weatherapp.myweatherapp.repository;
+
+import java.time.LocalDate;
+
+/**
+ * What to ask Visual Crossing for: which sections ("include") and fields ("elements") of the timeline,
+ * and optionally a date range instead of the default 15-day forecast.
+ *
+ * @param include   Sections to return (e.g. "days,current"); blank for the API default of everything
+ * @param elements  Fields to return within those sections; blank for all of them
+ * @param startDate First day to return, or null for the default forecast
+ * @param endDate   Last day to return, or null for just the start date
+ */
+public record TimelineQuery(String include, String elements, LocalDate startDate, LocalDate endDate) {
+
+  /**
+   * Just the current conditions fields the comparisons read, plus the location SolarDaylight needs,
+   * a small fraction of a full forecast
+   */
+  public static TimelineQuery currentConditions() {
+    return new TimelineQuery("current", "latitude,longitude,temp,feelslike,humidity,conditions,sunrise,sunset", null, null);
+  }
+
+  public static TimelineQuery of(String include, String elements) {
+    return new TimelineQuery(include, elements, null, null);
+  }
+
+  /**
+   * The same sections and fields for the given days only
+   */
+  public TimelineQuery between(LocalDate startDate, LocalDate endDate) {
+    return new TimelineQuery(include, elements, startDate, endDate);
+  }
+}
@@ -0,0 +1,53 @@
+package com.weatherapp.myweatherapp.repository;
+
+import java.util.List;
+
+/**
+ * Builds Visual Crossing timeline request URIs for the blocking and reactive repositories
+ */
+final class TimelineUris {
+
+  private TimelineUris() {
+  }
+
+  /**
+   * timeline/{city}[/{start}[/{end}]] for a single location
+   */
+  static String timeline(String url, String city, String key, TimelineQuery query) {
+    StringBuilder uri = new StringBuilder(url).append("timeline/").append(city);
+    if (query.startDate() != null) {
+      uri.append('/').append(query.startDate());
+      if (query.endDate() != null) {
+        uri.append('/').append(query.endDate());
+      }
+    }
+    uri.append("?key=").append(key);
+    appendSections(uri, query);
+    return uri.toString();
+  }
+
+  /**
+   * timelinemulti for several locations in one request; the response lists them in the same order
+   */
+  static String timelineMulti(String url, List<String> cities, String key, TimelineQuery query) {
+    StringBuilder uri = new StringBuilder(url).append("timelinemulti?key=").append(key)
+        .append("&locations=").append(String.join("|", cities));
+    if (query.startDate() != null) {
+      uri.append("&datestart=").append(query.startDate());
+      if (query.endDate() != null) {
+        uri.append("&dateend=").append(query.endDate());
+      }
+    }
+    appendSections(uri, query);
+    return uri.toString();
+  }
+
+  private static void appendSections(StringBuilder uri, TimelineQuery query) {
+    if (query.include() != null && !query.include().isBlank()) {
+      uri.append("&include=").append(query.include());
+    }
+    if (query.elements() != null && !query.elements().isBlank()) {
+      uri.append("&elements=").append(query.elements());
+    }
+  }
+}
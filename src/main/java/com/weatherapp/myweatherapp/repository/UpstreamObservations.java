@@ -0,0 +1,61 @@
+package com.weatherapp.myweatherapp.repository;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.boot.actuate.metrics.http.Outcome;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+/**
+ * Observes Visual Crossing calls as "visualcrossing.requests": a timer tagged with outcome and status (and the
+ * exception on failure), plus a span when tracing is sampled. Upstream failures also count towards
+ * "visualcrossing.errors".
+ * The request URI is deliberately left out of the tags since it carries the city and the API key.
+ */
+final class UpstreamObservations {
+
+  static final String NAME = "visualcrossing.requests";
+
+  static final String ERRORS = "visualcrossing.errors";
+
+  private UpstreamObservations() {
+  }
+
+  static Observation start(ObservationRegistry registry, String city) {
+    return Observation.createNotStarted(NAME, registry)
+        .contextualName("visualcrossing timeline")
+        .highCardinalityKeyValue("city", city)
+        .start();
+  }
+
+  static void success(Observation observation, int status) {
+    observation.lowCardinalityKeyValue(KeyValue.of("status", String.valueOf(status)))
+        .lowCardinalityKeyValue(KeyValue.of("outcome", Outcome.forStatus(status).name()))
+        .stop();
+  }
+
+  static void failure(Observation observation, MeterRegistry meterRegistry, Throwable error) {
+    String status = status(error);
+    Outcome outcome = status.equals("IO_ERROR") ? Outcome.UNKNOWN : Outcome.forStatus(Integer.parseInt(status));
+    observation.lowCardinalityKeyValue(KeyValue.of("status", status))
+        .lowCardinalityKeyValue(KeyValue.of("outcome", outcome.name()))
+        .error(error)
+        .stop();
+    meterRegistry.counter(ERRORS, "status", status).increment();
+  }
+
+  /**
+   * HTTP status of a failed call, or IO_ERROR when no response arrived (connect failure, timeout, bad payload)
+   */
+  private static String status(Throwable error) {
+    if (error instanceof RestClientResponseException responseException) {
+      return String.valueOf(responseException.getStatusCode().value());
+    }
+    if (error instanceof WebClientResponseException responseException) {
+      return String.valueOf(responseException.getStatusCode().value());
+    }
+    return "IO_ERROR";
+  }
+}
@@ -1,10 +1,22 @@
 package com.weatherapp.myweatherapp.repository;
 
 import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoParser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Repository;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
 @Repository
 public class VisualcrossingRepository {
 
@@ -12,12 +24,89 @@ public class VisualcrossingRepository {
   String url;
   @Value("${weather.visualcrossing.key}")
   String key;
+  @Value("${weather.visualcrossing.include:}")
+  String include;
+  @Value("${weather.visualcrossing.elements:}")
+  String elements;
+
+  // Shared, pooled client (see VisualcrossingClientConfig) so connections are reused between calls
+  @Autowired
+  RestTemplate restTemplate;
+
+  @Autowired
+  VisualcrossingResilience resilience;
+
+  @Autowired
+  ObservationRegistry observationRegistry;
 
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @Value("${weather.visualcrossing.multi.max-locations:10}")
+  int maxLocationsPerRequest;
+
+  /**
+   * The sections and fields configured for forecasts (weather.visualcrossing.include / elements)
+   */
+  public TimelineQuery defaultQuery() {
+    return TimelineQuery.of(include, elements);
+  }
 
   public CityInfo getByCity(String city) {
-    String uri = url + "timeline/" +city + "?key=" + key;
-    RestTemplate restTemplate = new RestTemplate();
-    return restTemplate.getForObject(uri, CityInfo.class);
+    return getByCity(city, defaultQuery());
+  }
+
+  public CityInfo getByCity(String city, TimelineQuery query) {
+    String uri = TimelineUris.timeline(url, city, key, query);
+    // Calls refused by the rate limiters, bulkhead or circuit breaker never reach Visual Crossing
+    return resilience.call(() -> fetch(uri, city, CityInfoParser::parse));
+  }
+
+  public List<CityInfo> getByCities(List<String> cities) {
+    return getByCities(cities, defaultQuery());
+  }
+
+  /**
+   * Fetches several cities with Visual Crossing's multi-location endpoint, one request per
+   * weather.visualcrossing.multi.max-locations cities.
+   *
+   * @return List<CityInfo> in the same order as the cities
+   */
+  public List<CityInfo> getByCities(List<String> cities, TimelineQuery query) {
+    if (cities.size() == 1) {
+      return List.of(getByCity(cities.get(0), query));
+    }
+    List<CityInfo> forecasts = new ArrayList<>(cities.size());
+    for (int from = 0; from < cities.size(); from += maxLocationsPerRequest) {
+      List<String> chunk = cities.subList(from, Math.min(from + maxLocationsPerRequest, cities.size()));
+      String uri = TimelineUris.timelineMulti(url, chunk, key, query);
+      List<CityInfo> locations = resilience.call(() -> fetch(uri, String.join("|", chunk), CityInfoParser::parseLocations));
+      if (locations.size() != chunk.size()) {
+        throw new IllegalStateException("Visual Crossing returned " + locations.size() + " locations for " + chunk.size() + " cities");
+      }
+      forecasts.addAll(locations);
+    }
+    return forecasts;
+  }
+
+  private <T> T fetch(String uri, String cities, ResponseParser<T> parser) {
+    Observation observation = UpstreamObservations.start(observationRegistry, cities);
+    try (Observation.Scope scope = observation.openScope()) {
+      // Parse straight off the response stream, skipping the parts of the timeline CityInfo doesn't use
+      return restTemplate.execute(uri, HttpMethod.GET,
+          request -> request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON)),
+          response -> {
+            T result = parser.parse(response.getBody());
+            UpstreamObservations.success(observation, response.getStatusCode().value());
+            return result;
+          });
+    } catch (RuntimeException e) {
+      UpstreamObservations.failure(observation, meterRegistry, e);
+      throw e;
+    }
+  }
 
+  private interface ResponseParser<T> {
+    T parse(InputStream body) throws IOException;
   }
 }
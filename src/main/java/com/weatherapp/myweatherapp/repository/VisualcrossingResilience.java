@@ -0,0 +1,189 @@
+package com.weatherapp.myweatherapp.repository;
+
+import com.weatherapp.myweatherapp.exception.UpstreamRateLimitException;
+import com.weatherapp.myweatherapp.exception.UpstreamUnavailableException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRateLimiterMetrics;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.github.resilience4j.reactor.ratelimiter.operator.RateLimiterOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Client-side protection for the Visual Crossing API key, shared by the servlet and reactive repositories.
+ * A call first has to get past the circuit breaker, then the per-second and per-day rate limiters
+ * (Resilience4j's refilling permit buckets), then the bulkhead that caps concurrent calls.
+ * Refused calls never reach Visual Crossing and surface as UpstreamUnavailableException (503)
+ * or UpstreamRateLimitException (429).
+ * The breaker opens when too many recent calls failed (5xx, 429, I/O errors and timeouts) or were slow;
+ * client errors such as an unknown city don't count.
+ */
+@Component
+public class VisualcrossingResilience {
+
+  @Value("${weather.visualcrossing.rate-limit.per-second:20}")
+  int requestsPerSecond;
+
+  // 0 turns the daily limit off
+  @Value("${weather.visualcrossing.rate-limit.per-day:0}")
+  int requestsPerDay;
+
+  @Value("${weather.visualcrossing.rate-limit.timeout:1s}")
+  Duration rateLimitTimeout;
+
+  @Value("${weather.visualcrossing.bulkhead.max-concurrent-calls:50}")
+  int maxConcurrentCalls;
+
+  @Value("${weather.visualcrossing.bulkhead.max-wait:1s}")
+  Duration bulkheadMaxWait;
+
+  @Value("${weather.visualcrossing.circuit-breaker.failure-rate-threshold:50}")
+  float failureRateThreshold;
+
+  @Value("${weather.visualcrossing.circuit-breaker.slow-call-rate-threshold:80}")
+  float slowCallRateThreshold;
+
+  @Value("${weather.visualcrossing.circuit-breaker.slow-call-duration:3s}")
+  Duration slowCallDuration;
+
+  @Value("${weather.visualcrossing.circuit-breaker.sliding-window-size:20}")
+  int slidingWindowSize;
+
+  @Value("${weather.visualcrossing.circuit-breaker.wait-in-open-state:30s}")
+  Duration waitInOpenState;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  CircuitBreaker circuitBreaker;
+
+  RateLimiter rateLimiter;
+
+  RateLimiter dailyRateLimiter;
+
+  Bulkhead bulkhead;
+
+  @PostConstruct
+  void init() {
+    CircuitBreakerRegistry circuitBreakers = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+        .slidingWindowSize(slidingWindowSize)
+        .minimumNumberOfCalls(slidingWindowSize)
+        .failureRateThreshold(failureRateThreshold)
+        .slowCallRateThreshold(slowCallRateThreshold)
+        .slowCallDurationThreshold(slowCallDuration)
+        .waitDurationInOpenState(waitInOpenState)
+        .recordException(VisualcrossingResilience::isUpstreamFailure)
+        .build());
+    circuitBreaker = circuitBreakers.circuitBreaker("visualcrossing");
+
+    RateLimiterRegistry rateLimiters = RateLimiterRegistry.ofDefaults();
+    rateLimiter = rateLimiters.rateLimiter("visualcrossing", RateLimiterConfig.custom()
+        .limitForPeriod(requestsPerSecond)
+        .limitRefreshPeriod(Duration.ofSeconds(1))
+        .timeoutDuration(rateLimitTimeout)
+        .build());
+    if (requestsPerDay > 0) {
+      // The day is counted from startup, not from midnight
+      dailyRateLimiter = rateLimiters.rateLimiter("visualcrossing-daily", RateLimiterConfig.custom()
+          .limitForPeriod(requestsPerDay)
+          .limitRefreshPeriod(Duration.ofDays(1))
+          .timeoutDuration(Duration.ZERO)
+          .build());
+    }
+
+    BulkheadRegistry bulkheads = BulkheadRegistry.of(BulkheadConfig.custom()
+        .maxConcurrentCalls(maxConcurrentCalls)
+        .maxWaitDuration(bulkheadMaxWait)
+        .build());
+    bulkhead = bulkheads.bulkhead("visualcrossing");
+
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakers).bindTo(meterRegistry);
+    TaggedRateLimiterMetrics.ofRateLimiterRegistry(rateLimiters).bindTo(meterRegistry);
+    TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheads).bindTo(meterRegistry);
+  }
+
+  /**
+   * Runs a blocking upstream call once every guard lets it through
+   */
+  public <T> T call(Supplier<T> upstreamCall) {
+    Supplier<T> guarded = Bulkhead.decorateSupplier(bulkhead, upstreamCall);
+    if (dailyRateLimiter != null) {
+      guarded = RateLimiter.decorateSupplier(dailyRateLimiter, guarded);
+    }
+    guarded = RateLimiter.decorateSupplier(rateLimiter, guarded);
+    guarded = CircuitBreaker.decorateSupplier(circuitBreaker, guarded);
+    try {
+      return guarded.get();
+    } catch (RuntimeException e) {
+      throw (RuntimeException) translate(e);
+    }
+  }
+
+  /**
+   * Reactive variant: the guards apply when the returned Mono is subscribed, waiting for permits without blocking
+   */
+  public <T> Mono<T> call(Mono<T> upstreamCall) {
+    Mono<T> guarded = upstreamCall.transformDeferred(BulkheadOperator.of(bulkhead));
+    if (dailyRateLimiter != null) {
+      guarded = guarded.transformDeferred(RateLimiterOperator.of(dailyRateLimiter));
+    }
+    return guarded.transformDeferred(RateLimiterOperator.of(rateLimiter))
+        .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+        .onErrorMap(VisualcrossingResilience::translate);
+  }
+
+  private static Throwable translate(Throwable e) {
+    if (e instanceof RequestNotPermitted) {
+      return new UpstreamRateLimitException("Visual Crossing request quota reached, try again later");
+    }
+    if (e instanceof CallNotPermittedException) {
+      return new UpstreamUnavailableException("Visual Crossing is currently failing, try again later");
+    }
+    if (e instanceof BulkheadFullException) {
+      return new UpstreamUnavailableException("Too many Visual Crossing lookups in flight, try again later");
+    }
+    return e;
+  }
+
+  /**
+   * Failures that say something about Visual Crossing's health, as opposed to a bad request on our side
+   */
+  static boolean isUpstreamFailure(Throwable e) {
+    if (e instanceof RestClientResponseException responseException) {
+      return isUpstreamFailureStatus(responseException.getStatusCode().value());
+    }
+    if (e instanceof WebClientResponseException responseException) {
+      return isUpstreamFailureStatus(responseException.getStatusCode().value());
+    }
+    return e instanceof ResourceAccessException || e instanceof WebClientRequestException;
+  }
+
+  private static boolean isUpstreamFailureStatus(int status) {
+    return status >= 500 || status == 429;
+  }
+}
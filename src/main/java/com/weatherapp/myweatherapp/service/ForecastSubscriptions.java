@@ -0,0 +1,179 @@
+package com.weatherapp.myweatherapp.service;
+
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.RainChange;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pushes forecast updates and rain start/stop changes to subscribers instead of having them poll.
+ * Each subscribed city is checked once per pass (see pollSubscribedCities), however many subscribers it has,
+ * and the result fans out to all of them. Listeners only hear about forecasts that actually changed.
+ */
+@Service
+public class ForecastSubscriptions {
+
+  private static final Logger log = LoggerFactory.getLogger(ForecastSubscriptions.class);
+
+  @Autowired
+  WeatherService weatherService;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @Value("${weather.visualcrossing.multi.max-locations:10}")
+  int citiesPerRequest;
+
+  // Subscribed cities by normalized name; a city is dropped as soon as its last listener leaves
+  final Map<String, CityFeed> feeds = new ConcurrentHashMap<>();
+
+  /**
+   * Receives the updates for the cities it subscribed to, each city's in order. Called with the city's feed locked,
+   * from the polling thread or a subscribing request, so it must not block: writes to a client belong on another thread.
+   */
+  public interface Listener {
+
+    void onForecast(String city, CityInfo cityInfo);
+
+    void onRainChange(RainChange change);
+  }
+
+  /**
+   * Ends a subscription; safe to call more than once
+   */
+  public interface Subscription {
+
+    void cancel();
+  }
+
+  @PostConstruct
+  void registerMetrics() {
+    Gauge.builder("weather.subscriptions.cities", feeds, Map::size)
+        .description("Cities with at least one subscriber, each looked up once per pass")
+        .register(meterRegistry);
+    Gauge.builder("weather.subscriptions.listeners", feeds,
+            f -> f.values().stream().mapToInt(feed -> feed.listeners.size()).sum())
+        .description("Subscriptions summed over cities")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Subscribes the listener to the given cities and sends it their current forecasts straight away.
+   * Lookup failures are thrown before anything is registered.
+   * Each city's first forecast is sent under the feed's lock (see CityFeed.add), so a poll running at the same time
+   * can't get a newer forecast to the listener ahead of it.
+   */
+  public Subscription subscribe(List<String> cities, Listener listener) {
+    List<CityInfo> forecasts = weatherService.forecastByCities(cities);
+
+    Map<String, CityInfo> forecastByKey = new LinkedHashMap<>();
+    for (int i = 0; i < cities.size(); i++) {
+      forecastByKey.put(WeatherService.normalize(cities.get(i)), forecasts.get(i));
+    }
+    forecastByKey.forEach((key, cityInfo) -> feeds.compute(key, (k, feed) -> {
+      CityFeed subscribed = feed != null ? feed : new CityFeed(cityInfo);
+      subscribed.add(key, listener, cityInfo);
+      return subscribed;
+    }));
+
+    Set<String> keys = forecastByKey.keySet();
+    return () -> keys.forEach(key -> feeds.computeIfPresent(key, (k, feed) -> {
+      feed.listeners.remove(listener);
+      return feed.listeners.isEmpty() ? null : feed;
+    }));
+  }
+
+  /**
+   * Checks the current conditions of every subscribed city, in multi-location chunks, and notifies listeners of
+   * changed forecasts. Only current conditions are polled, through their own cache (see
+   * WeatherService.currentConditionsByCities); a city's full forecast is fetched again only once they no longer match
+   * the forecast its listeners were last sent, so a forecast that changes while the current conditions stay the same
+   * goes out with the next change that does show in them. Scheduled by ForecastRefreshConfig.
+   */
+  public void pollSubscribedCities() {
+    List<String> cities = new ArrayList<>(feeds.keySet());
+    for (int from = 0; from < cities.size(); from += citiesPerRequest) {
+      List<String> chunk = cities.subList(from, Math.min(from + citiesPerRequest, cities.size()));
+      List<String> changed = new ArrayList<>();
+      List<CityInfo> forecasts;
+      try {
+        List<CityInfo> current = weatherService.currentConditionsByCities(chunk);
+        for (int i = 0; i < chunk.size(); i++) {
+          CityFeed feed = feeds.get(chunk.get(i));
+          if (feed != null && !feed.last.hasSameCurrentConditions(current.get(i))) {
+            changed.add(chunk.get(i));
+          }
+        }
+        if (changed.isEmpty()) {
+          continue;
+        }
+        forecasts = weatherService.refreshForecastsByCities(changed);
+      } catch (RuntimeException e) {
+        // Keep the last forecasts and try again on the next pass
+        log.warn("Could not refresh subscribed cities {}: {}", chunk, e.toString());
+        continue;
+      }
+      for (int i = 0; i < changed.size(); i++) {
+        CityFeed feed = feeds.get(changed.get(i));
+        if (feed != null) {
+          feed.update(changed.get(i), forecasts.get(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * Listeners of one city and the last forecast they were sent. Sends happen under the feed's lock, so every
+   * listener gets the city's forecasts in the same order.
+   */
+  static class CityFeed {
+
+    final Set<Listener> listeners = ConcurrentHashMap.newKeySet();
+
+    CityInfo last;
+
+    CityFeed(CityInfo last) {
+      this.last = last;
+    }
+
+    /**
+     * Brings the existing listeners up to the forecast just looked up for the new one, if the cache has moved on
+     * since the last poll, then sends the new listener the same forecast they were last sent and adds it
+     */
+    synchronized void add(String city, Listener listener, CityInfo lookedUp) {
+      update(city, lookedUp);
+      listener.onForecast(city, last);
+      listeners.add(listener);
+    }
+
+    synchronized void update(String city, CityInfo cityInfo) {
+      CityInfo previous = last;
+      if (previous != null && Objects.equals(previous.getVersion(), cityInfo.getVersion())) {
+        return;
+      }
+      last = cityInfo;
+
+      RainChange rainChange = RainChange.between(city, previous, cityInfo);
+      for (Listener listener : listeners) {
+        listener.onForecast(city, cityInfo);
+        if (rainChange != null) {
+          listener.onRainChange(rainChange);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.weatherapp.myweatherapp.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.repository.ReactiveVisualcrossingRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Non-blocking variant of WeatherService used by the reactive stack, with the same cache settings
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWeatherService {
+
+  @Autowired
+  ReactiveVisualcrossingRepository weatherRepo;
+
+  @Value("${weather.cache.ttl:5m}")
+  Duration cacheTtl;
+
+  @Value("${weather.cache.max-size:1000}")
+  long cacheMaxSize;
+
+  @Value("${weather.subscriptions.interval:15s}")
+  Duration subscriptionInterval;
+
+  AsyncCache<String, CityInfo> forecastCache;
+
+  // One shared lookup loop per subscribed city, replaying the latest forecast to new subscribers
+  final Map<String, Flux<CityInfo>> forecastUpdates = new ConcurrentHashMap<>();
+
+  /**
+   * Caches the in-flight lookup per normalized city, so concurrent requests for the same city share one upstream call.
+   * Upstream is asked for the city as the caller spelt it, which it echoes back as the forecast's address.
+   */
+  @PostConstruct
+  void initCache() {
+    forecastCache = Caffeine.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfterWrite(cacheTtl)
+        .recordStats()
+        .buildAsync();
+  }
+
+  public Mono<CityInfo> forecastByCity(String city) {
+
+    // Cancelling one subscriber must not cancel the lookup shared with the others
+    return Mono.fromFuture(() -> forecastCache.get(WeatherService.normalize(city),
+        (key, executor) -> weatherRepo.getByCity(city.trim()).toFuture()), true);
+  }
+
+  /**
+   * How much longer the cached forecast for the city stays in the cache, or the full TTL when it isn't cached
+   */
+  public Duration timeToLive(String city) {
+    return forecastCache.synchronous().policy().expireAfterWrite()
+        .flatMap(expiration -> expiration.ageOf(WeatherService.normalize(city)))
+        // Entries still loading report a negative age
+        .filter(age -> !age.isNegative() && age.compareTo(cacheTtl) <= 0)
+        .map(age -> cacheTtl.minus(age))
+        .orElse(cacheTtl);
+  }
+
+  /**
+   * The city's forecast now and whenever it changes, looked up every subscription interval. All subscribers
+   * of a city share one loop, which stops with its last subscriber. Failed lookups are skipped until the next one.
+   */
+  public Flux<CityInfo> forecastUpdates(String city) {
+
+    return forecastUpdates.computeIfAbsent(WeatherService.normalize(city), key -> Flux.interval(Duration.ZERO, subscriptionInterval)
+        .onBackpressureDrop()
+        .concatMap(tick -> forecastByCity(city).onErrorResume(e -> Mono.empty()))
+        .distinctUntilChanged(CityInfo::getVersion)
+        .doFinally(signal -> forecastUpdates.remove(key))
+        .replay(1)
+        .refCount());
+  }
+
+  /**
+   * Looks up the cities with at most maxConcurrency requests in flight, emitting results in the order requested
+   */
+  public Flux<CityInfo> forecastByCities(List<String> cities, int maxConcurrency) {
+
+    return Flux.fromIterable(cities).flatMapSequential(this::forecastByCity, maxConcurrency);
+  }
+}
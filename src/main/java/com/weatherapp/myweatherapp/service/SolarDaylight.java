@@ -0,0 +1,232 @@
+package com.weatherapp.myweatherapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.DaylightRank;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.ZoneOffset;
+
+/**
+ * Daylight lengths computed from each city's coordinates with NOAA's solar equations, so daylight comparisons
+ * don't need forecasts. A city's location is learnt from the first forecast fetched for it; after that its daylight
+ * is read from a table of minutes for every day of the year, built once per city and year.
+ * <p>
+ * Sunrise and sunset from upstream are only a cross-check: a city whose computed daylight is more than tolerance
+ * away from its forecast's keeps being answered from forecasts. Locations are rechecked against a fresh forecast
+ * every recheck interval.
+ */
+@Service
+public class SolarDaylight {
+
+  private static final Logger log = LoggerFactory.getLogger(SolarDaylight.class);
+
+  static final int MINUTES_PER_DAY = 24 * 60;
+
+  // Sun's centre 0.833° below the horizon at sunrise and sunset: its radius plus atmospheric refraction
+  private static final double COS_ZENITH = Math.cos(Math.toRadians(90.833));
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @Value("${weather.daylight.solar.enabled:true}")
+  boolean enabled;
+
+  @Value("${weather.daylight.solar.tolerance:5m}")
+  Duration tolerance;
+
+  @Value("${weather.daylight.solar.recheck:1d}")
+  Duration recheck;
+
+  @Value("${weather.cache.max-size:1000}")
+  long cacheMaxSize;
+
+  Clock clock = Clock.systemUTC();
+
+  // Located cities by normalized name, including those that failed the cross-check
+  Cache<String, Location> locations;
+
+  Counter matches;
+
+  Counter mismatches;
+
+  Counter unlocated;
+
+  /**
+   * Daylight minutes for each day of one year, indexed by day of year - 1
+   */
+  private record DaylightTable(int year, short[] minutesByDay) {
+  }
+
+  private static final class Location {
+
+    final String address;
+
+    final double latitude;
+
+    final double longitude;
+
+    // Set once resolve has cross-checked it, before the location is published; read by other request threads
+    volatile boolean trusted;
+
+    volatile DaylightTable table;
+
+    Location(String address, double latitude, double longitude) {
+      this.address = address;
+      this.latitude = latitude;
+      this.longitude = longitude;
+    }
+
+    long daylightMinutes(Instant now) {
+      // The local date, going by the sun rather than the time zone: 4 minutes per degree east of Greenwich
+      LocalDate date = LocalDate.ofInstant(now.plusSeconds(Math.round(longitude * 240)), ZoneOffset.UTC);
+      DaylightTable current = table;
+      if (current == null || current.year() != date.getYear()) {
+        current = new DaylightTable(date.getYear(), daylightTable(latitude, date.getYear()));
+        table = current;
+      }
+      return current.minutesByDay()[date.getDayOfYear() - 1];
+    }
+  }
+
+  @PostConstruct
+  void init() {
+    locations = Caffeine.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfterWrite(recheck)
+        .build();
+    matches = crossCheckCounter("match");
+    mismatches = crossCheckCounter("mismatch");
+    unlocated = crossCheckCounter("no-location");
+  }
+
+  private Counter crossCheckCounter(String result) {
+    return Counter.builder("weather.daylight.cross-check")
+        .description("Forecasts checked against the computed daylight of their city, by result")
+        .tag("result", result)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Today's daylight at the city as an unranked DaylightRank, or null when it has to come from a forecast:
+   * its location isn't known yet, is due a recheck, or failed the cross-check
+   */
+  public DaylightRank daylight(String city) {
+    if (!enabled) {
+      return null;
+    }
+    Location location = locations.getIfPresent(WeatherService.normalize(city));
+    if (location == null || !location.trusted) {
+      return null;
+    }
+    return new DaylightRank(0, city, location.address, location.daylightMinutes(clock.instant()));
+  }
+
+  /**
+   * Learns the city's location from a forecast just looked up for it and cross-checks the computed daylight
+   * against the forecast's sunrise and sunset
+   *
+   * @return The daylight to use: computed if the check passed, the forecast's otherwise
+   * @throws IllegalStateException if it comes from a forecast that has no sunrise or sunset
+   */
+  public DaylightRank resolve(String city, CityInfo forecast) {
+    if (!enabled) {
+      return fromForecast(city, forecast);
+    }
+    String key = WeatherService.normalize(city);
+    Location known = locations.getIfPresent(key);
+    if (known != null && !known.trusted) {
+      // Already failed the cross-check; wait for the recheck rather than counting it again
+      return fromForecast(city, forecast);
+    }
+    if (Double.isNaN(forecast.getLatitude()) || Double.isNaN(forecast.getLongitude())) {
+      unlocated.increment();
+      return fromForecast(city, forecast);
+    }
+
+    Location location = new Location(forecast.getAddress(), forecast.getLatitude(), forecast.getLongitude());
+    long computed = location.daylightMinutes(clock.instant());
+    location.trusted = agrees(computed, forecast);
+    locations.put(key, location);
+    if (!location.trusted) {
+      mismatches.increment();
+      log.warn("Computed daylight for {} at {},{} ({} min) disagrees with its forecast; using forecasts until {} from now",
+          city, location.latitude, location.longitude, computed, recheck);
+      return fromForecast(city, forecast);
+    }
+    matches.increment();
+    return new DaylightRank(0, city, location.address, computed);
+  }
+
+  /**
+   * Whether the forecasts' own sunrise and sunset are sure to order the two cities the same way as these daylights,
+   * as returned by daylight or resolve. Computed daylight only agrees with a forecast's to within tolerance, so
+   * two computed values that far apart or closer could be the other way round in the forecasts.
+   */
+  public boolean ordersLikeForecasts(DaylightRank daylight1, DaylightRank daylight2) {
+    return !enabled || Math.abs(daylight1.daylightMinutes() - daylight2.daylightMinutes()) > 2 * tolerance.toMinutes();
+  }
+
+  private boolean agrees(long computed, CityInfo forecast) {
+    long upstream;
+    try {
+      upstream = forecast.getDaylightMinutes();
+    } catch (IllegalStateException e) {
+      // No sunrise or sunset upstream, which is right only if the sun stays up or down all day
+      return computed == 0 || computed == MINUTES_PER_DAY;
+    }
+    return Math.abs(upstream - computed) <= tolerance.toMinutes();
+  }
+
+  private static DaylightRank fromForecast(String city, CityInfo forecast) {
+    return new DaylightRank(0, city, forecast.getAddress(), forecast.getDaylightMinutes());
+  }
+
+  static short[] daylightTable(double latitude, int year) {
+    int daysInYear = Year.of(year).length();
+    short[] minutesByDay = new short[daysInYear];
+    for (int day = 1; day <= daysInYear; day++) {
+      minutesByDay[day - 1] = (short) daylightMinutes(latitude, day, daysInYear);
+    }
+    return minutesByDay;
+  }
+
+  /**
+   * Minutes between sunrise and sunset on the given day (NOAA general solar position equations, good to about
+   * a minute away from the poles), 0 when the sun doesn't rise and 1440 when it doesn't set
+   *
+   * @param latitude  Degrees, north positive
+   * @param dayOfYear 1 for January 1st
+   */
+  static long daylightMinutes(double latitude, int dayOfYear, int daysInYear) {
+    // Fractional year in radians, at noon
+    double gamma = 2 * Math.PI / daysInYear * (dayOfYear - 1);
+    double declination = 0.006918 - 0.399912 * Math.cos(gamma) + 0.070257 * Math.sin(gamma)
+        - 0.006758 * Math.cos(2 * gamma) + 0.000907 * Math.sin(2 * gamma)
+        - 0.002697 * Math.cos(3 * gamma) + 0.00148 * Math.sin(3 * gamma);
+
+    double phi = Math.toRadians(latitude);
+    double cosHourAngle = COS_ZENITH / (Math.cos(phi) * Math.cos(declination)) - Math.tan(phi) * Math.tan(declination);
+    if (cosHourAngle >= 1) {
+      return 0;
+    }
+    if (cosHourAngle <= -1) {
+      return MINUTES_PER_DAY;
+    }
+    // The sun is up for twice the sunrise hour angle, turning 1° every 4 minutes
+    return (long) (8 * Math.toDegrees(Math.acos(cosHourAngle)));
+  }
+}
@@ -1,18 +1,531 @@
 package com.weatherapp.myweatherapp.service;
 
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.repository.ForecastStore;
+import com.weatherapp.myweatherapp.repository.SharedForecastCache;
+import com.weatherapp.myweatherapp.repository.TimelineQuery;
 import com.weatherapp.myweatherapp.repository.VisualcrossingRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
 @Service
 public class WeatherService {
 
+  private static final long SHARED_POLL_MILLIS = 50;
+
   @Autowired
   VisualcrossingRepository weatherRepo;
 
+  // Fetched forecasts are also written to disk, and read back on startup
+  @Autowired
+  ForecastStore forecastStore;
+
+  // Second-level cache shared with the other replicas (SharedForecastCache.none() when not configured)
+  @Autowired
+  SharedForecastCache sharedCache;
+
+  @Value("${weather.shared-cache.lock-wait:2s}")
+  Duration lockWait;
+
+  @Value("${weather.cache.ttl:5m}")
+  Duration cacheTtl;
+
+  @Value("${weather.cache.max-size:1000}")
+  long cacheMaxSize;
+
+  // Forecasts older than this are still served, but refreshed in the background
+  @Value("${weather.cache.refresh-after:1m}")
+  Duration refreshAfter;
+
+  @Value("${weather.cache.refresh-ahead.top-n:20}")
+  int refreshAheadTopN;
+
+  @Value("${weather.cache.refresh-ahead.interval:30s}")
+  Duration refreshAheadInterval;
+
+  // Runs upstream loads; see UpstreamExecutorConfig for the platform and virtual thread variants
+  @Autowired
+  @Qualifier("forecastLoadExecutor")
+  Executor loadExecutor;
+
+  @Autowired
+  @Qualifier("forecastRefreshExecutor")
+  Executor refreshExecutor;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  Ticker ticker = Ticker.systemTicker();
+
+  AsyncLoadingCache<String, CityInfo> forecastCache;
+
+  final ForecastLoader loader = new ForecastLoader();
+
+  Policy.VarExpiration<String, CityInfo> forecastExpiration;
+
+  // Current conditions only, for callers that need nothing more; cached apart from forecasts (see currentConditionsByCities)
+  AsyncLoadingCache<String, CityInfo> currentCache;
+
+  final CurrentConditionsLoader currentLoader = new CurrentConditionsLoader();
+
+  // Forecasts taken from the shared cache, by key, with when (on the ticker) they reach the end of their TTL
+  final Map<String, SharedHit> sharedHits = new ConcurrentHashMap<>();
+
+  // Requests per normalized city, halved on every refresh-ahead pass so old popularity fades out
+  final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+
+  Timer staleServed;
+
+  Counter refreshedAhead;
+
+  /**
+   * Forecasts are cached per normalized city name for the configured TTL, but fetched under the caller's own
+   * spelling, which upstream echoes back as the forecast's address. The cache is bounded by size
+   * (Caffeine's frequency-aware LRU/LFU eviction) and concurrent misses on the same city share one upstream call.
+   * Once a forecast is older than refresh-after, the next request still gets it straight away and triggers
+   * a background refresh on the bounded refresh executor.
+   * Bulk lookups load all their missing cities through one multi-location request per chunk.
+   * The cache starts out with the forecasts kept in the forecast store, at the age they really are (see warmUp).
+   */
+  @PostConstruct
+  void initCache() {
+    forecastCache = Caffeine.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfter(new ForecastExpiry())
+        .refreshAfterWrite(refreshAfter)
+        .ticker(ticker)
+        .executor(loadExecutor)
+        .removalListener((String key, CityInfo cityInfo, RemovalCause cause) ->
+            sharedHits.computeIfPresent(key, (k, hit) -> hit.cityInfo() == cityInfo ? null : hit))
+        .recordStats()
+        .buildAsync(loader);
+    forecastExpiration = forecastCache.synchronous().policy().expireVariably().orElseThrow();
+    warmUp(forecastStore.load());
+    currentCache = Caffeine.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfterWrite(cacheTtl)
+        .refreshAfterWrite(refreshAfter)
+        .ticker(ticker)
+        .executor(loadExecutor)
+        .recordStats()
+        .buildAsync(currentLoader);
+
+    CaffeineCacheMetrics.monitor(meterRegistry, forecastCache, "forecasts");
+    CaffeineCacheMetrics.monitor(meterRegistry, currentCache, "current-conditions");
+    staleServed = Timer.builder("weather.cache.stale")
+        .description("Forecasts served while past refresh-after, by how far past")
+        .register(meterRegistry);
+    refreshedAhead = Counter.builder("weather.cache.refresh-ahead")
+        .description("Popular forecasts refreshed before going stale")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Seeds the cache with stored forecasts. Each expires when it would have if the app had kept running, so it is
+   * never served or advertised as fresher than it is; ones already past the TTL are dropped, and ones past
+   * refresh-after are refreshed straight away rather than a full refresh-after from now.
+   */
+  private void warmUp(Map<String, ForecastStore.LoadedForecast> stored) {
+    List<String> stale = new ArrayList<>();
+    stored.forEach((key, loaded) -> {
+      if (loaded.age().compareTo(cacheTtl) >= 0) {
+        return;
+      }
+      forecastExpiration.put(key, loaded.cityInfo(), cacheTtl.minus(loaded.age()));
+      if (loaded.age().compareTo(refreshAfter) >= 0) {
+        stale.add(key);
+      }
+    });
+    stale.forEach(forecastCache.synchronous()::refresh);
+  }
+
   public CityInfo forecastByCity(String city) {
 
-    return weatherRepo.getByCity(city);
+    String key = normalize(city);
+    recordRequest(key);
+    recordStaleness(key);
+    return join(forecastCache.get(key, (k, executor) -> loader.load(k, city.trim(), executor)));
+  }
+
+  /**
+   * Forecasts for several cities, in the same order. Cities missing from the cache are fetched together,
+   * in as few multi-location upstream requests as possible.
+   */
+  public List<CityInfo> forecastByCities(List<String> cities) {
+
+    List<String> keys = new ArrayList<>(cities.size());
+    Map<String, String> names = new HashMap<>(cities.size() * 2);
+    for (String city : cities) {
+      String key = normalize(city);
+      recordRequest(key);
+      recordStaleness(key);
+      keys.add(key);
+      names.putIfAbsent(key, city.trim());
+    }
+    Map<String, CityInfo> forecasts = join(forecastCache.getAll(keys,
+        (missing, executor) -> loader.loadAll(missing, names, executor)));
+    return keys.stream().map(forecasts::get).toList();
+  }
+
+  /**
+   * Fetches the cities' forecasts again now, even if the cached ones aren't due a refresh yet, and caches the result.
+   * For callers that have seen upstream move on, such as ForecastSubscriptions noticing new current conditions.
+   *
+   * @return The refreshed forecasts, in the same order as the cities
+   */
+  public List<CityInfo> refreshForecastsByCities(List<String> cities) {
+
+    List<String> keys = cities.stream().map(WeatherService::normalize).toList();
+    Map<String, CityInfo> forecasts = join(forecastCache.synchronous().refreshAll(keys));
+    return keys.stream().map(forecasts::get).toList();
+  }
+
+  /**
+   * Current conditions and location for several cities, in the same order, for callers that need nothing more:
+   * they are fetched with TimelineQuery.currentConditions(), a fraction of the bytes of a forecast.
+   * They are cached apart from forecasts and neither stored nor shared, so one never stands in for the other.
+   */
+  public List<CityInfo> currentConditionsByCities(List<String> cities) {
+
+    List<String> keys = new ArrayList<>(cities.size());
+    Map<String, String> names = new HashMap<>(cities.size() * 2);
+    for (String city : cities) {
+      String key = normalize(city);
+      keys.add(key);
+      names.putIfAbsent(key, city.trim());
+    }
+    Map<String, CityInfo> current = join(currentCache.getAll(keys,
+        (missing, executor) -> currentLoader.loadAll(missing, names, executor)));
+    return keys.stream().map(current::get).toList();
+  }
+
+  /**
+   * How much longer the cached forecast for the city stays in the cache, or the full TTL when it isn't cached
+   */
+  public Duration timeToLive(String city) {
+    return ageOf(normalize(city))
+        // Entries still loading report a negative age
+        .filter(age -> !age.isNegative() && age.compareTo(cacheTtl) <= 0)
+        .map(age -> cacheTtl.minus(age))
+        .orElse(cacheTtl);
+  }
+
+  /**
+   * Hit, miss and eviction counters for the forecast cache
+   */
+  public CacheStats cacheStats() {
+    return forecastCache.synchronous().stats();
+  }
+
+  /**
+   * Refreshes the most requested cities whose forecasts would go stale before the next pass,
+   * so popular cities are always served fresh without waiting on the upstream. Scheduled by ForecastRefreshConfig.
+   */
+  public void refreshHotCities() {
+    List<Map.Entry<String, Long>> counts = new ArrayList<>(requestCounts.size());
+    requestCounts.forEach((key, count) -> {
+      long requests = count.sumThenReset();
+      if (requests > 1) {
+        count.add(requests / 2);
+      } else {
+        requestCounts.remove(key, count);
+      }
+      counts.add(Map.entry(key, requests));
+    });
+    counts.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+    Duration refreshAge = refreshAfter.minus(refreshAheadInterval);
+    for (Map.Entry<String, Long> entry : counts.subList(0, Math.min(refreshAheadTopN, counts.size()))) {
+      String key = entry.getKey();
+      if (ageOf(key).filter(age -> age.compareTo(refreshAge) >= 0).isPresent()) {
+        forecastCache.synchronous().refresh(key);
+        refreshedAhead.increment();
+      }
+    }
+  }
+
+  private void recordRequest(String key) {
+    LongAdder count = requestCounts.get(key);
+    if (count == null) {
+      // Only track as many cities as the cache can hold
+      if (requestCounts.size() >= cacheMaxSize) {
+        return;
+      }
+      count = requestCounts.computeIfAbsent(key, k -> new LongAdder());
+    }
+    count.increment();
+  }
+
+  /**
+   * Records a stale hit: a cached forecast past refresh-after but not yet expired is about to be served
+   */
+  private void recordStaleness(String key) {
+    ageOf(key)
+        .filter(age -> age.compareTo(refreshAfter) > 0 && age.compareTo(cacheTtl) < 0)
+        .ifPresent(age -> staleServed.record(age.minus(refreshAfter)));
+  }
+
+  /**
+   * How long ago the cached forecast for the key was fetched, if it is cached
+   */
+  private Optional<Duration> ageOf(String key) {
+    return forecastExpiration.getExpiresAfter(key).map(cacheTtl::minus);
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * The name a city is cached and subscribed under
+   */
+  public static String normalize(String city) {
+    return city.trim().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Forecasts expire the TTL after they were fetched from upstream: a TTL after being loaded or refreshed, or
+   * sooner when they came from the shared cache already aged, so they are never served or advertised as fresher
+   * than they are (the same rule warmUp applies to stored forecasts)
+   */
+  private class ForecastExpiry implements Expiry<String, CityInfo> {
+
+    @Override
+    public long expireAfterCreate(String key, CityInfo cityInfo, long currentTime) {
+      return lifetime(key, cityInfo, currentTime);
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, CityInfo cityInfo, long currentTime, long currentDuration) {
+      return lifetime(key, cityInfo, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(String key, CityInfo cityInfo, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+
+    private long lifetime(String key, CityInfo cityInfo, long currentTime) {
+      SharedHit hit = sharedHits.get(key);
+      if (hit != null && hit.cityInfo() == cityInfo) {
+        return Math.max(0, hit.expiresAt() - currentTime);
+      }
+      return cacheTtl.toNanos();
+    }
+  }
+
+  private record SharedHit(CityInfo cityInfo, long expiresAt) {
+  }
+
+  /**
+   * Loads on the load executor and refreshes on the bounded refresh executor, storing every fetched forecast.
+   * Cities are cached, stored and shared under their normalized name but asked for upstream by name: the spelling
+   * of the request that missed, or on refresh the address the forecast came back with.
+   * The shared cache is checked first; on a miss the node that gets the city's refresh lock fetches it and shares
+   * the result, while the others wait up to lock-wait for it to appear before fetching for themselves.
+   */
+  private class ForecastLoader implements AsyncCacheLoader<String, CityInfo> {
+
+    @Override
+    public CompletableFuture<CityInfo> asyncLoad(String key, Executor executor) {
+      return load(key, key, executor);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, CityInfo>> asyncLoadAll(Set<? extends String> keys, Executor executor) {
+      return loadAll(keys, Map.of(), executor);
+    }
+
+    @Override
+    public CompletableFuture<CityInfo> asyncReload(String key, CityInfo oldValue, Executor executor) {
+      String name = oldValue.getAddress() != null ? oldValue.getAddress() : key;
+      // Only take a shared forecast that another node refreshed since ours went stale
+      return CompletableFuture.supplyAsync(() -> fetch(key, name, refreshAfter), refreshExecutor);
+    }
+
+    CompletableFuture<CityInfo> load(String key, String name, Executor executor) {
+      return CompletableFuture.supplyAsync(() -> fetch(key, name, cacheTtl), executor);
+    }
+
+    /**
+     * @param names Name to ask upstream for, by key; keys without one are asked for as they are
+     */
+    CompletableFuture<Map<String, CityInfo>> loadAll(Set<? extends String> keys, Map<String, String> names, Executor executor) {
+      List<String> cities = List.copyOf(keys);
+      return CompletableFuture.supplyAsync(() -> fetchAll(cities, names), executor);
+    }
+
+    private CityInfo fetch(String key, String name, Duration maxSharedAge) {
+      Optional<CityInfo> shared = getShared(key, maxSharedAge);
+      if (shared.isPresent()) {
+        return shared.get();
+      }
+      Optional<String> lock = sharedCache.tryLock(key);
+      if (lock.isPresent()) {
+        try {
+          return fetchUpstream(key, name);
+        } finally {
+          sharedCache.unlock(key, lock.get());
+        }
+      }
+      return awaitShared(key, maxSharedAge, System.nanoTime() + lockWait.toNanos())
+          .orElseGet(() -> fetchUpstream(key, name));
+    }
+
+    private Map<String, CityInfo> fetchAll(List<String> keys, Map<String, String> names) {
+      Map<String, CityInfo> loaded = new HashMap<>(keys.size() * 2);
+      // Lock tokens by key, in key order
+      Map<String, String> locked = new LinkedHashMap<>();
+      List<String> busy = new ArrayList<>();
+      for (String key : keys) {
+        getShared(key, cacheTtl).ifPresentOrElse(cityInfo -> loaded.put(key, cityInfo),
+            () -> sharedCache.tryLock(key).ifPresentOrElse(token -> locked.put(key, token), () -> busy.add(key)));
+      }
+
+      try {
+        List<String> fetching = List.copyOf(locked.keySet());
+        putAll(loaded, fetching, fetchUpstream(fetching, names));
+      } finally {
+        locked.forEach(sharedCache::unlock);
+      }
+
+      long deadline = System.nanoTime() + lockWait.toNanos();
+      List<String> missing = new ArrayList<>();
+      for (String key : busy) {
+        awaitShared(key, cacheTtl, deadline).ifPresentOrElse(cityInfo -> loaded.put(key, cityInfo), () -> missing.add(key));
+      }
+      putAll(loaded, missing, fetchUpstream(missing, names));
+      return loaded;
+    }
+
+    private CityInfo fetchUpstream(String key, String name) {
+      CityInfo cityInfo = weatherRepo.getByCity(name);
+      forecastStore.append(key, cityInfo);
+      sharedCache.put(key, cityInfo);
+      return cityInfo;
+    }
+
+    private List<CityInfo> fetchUpstream(List<String> keys, Map<String, String> names) {
+      if (keys.isEmpty()) {
+        return List.of();
+      }
+      List<CityInfo> forecasts = weatherRepo.getByCities(keys.stream().map(key -> names.getOrDefault(key, key)).toList());
+      for (int i = 0; i < keys.size(); i++) {
+        forecastStore.append(keys.get(i), forecasts.get(i));
+        sharedCache.put(keys.get(i), forecasts.get(i));
+      }
+      return forecasts;
+    }
+
+    /**
+     * Polls the shared cache for a forecast another node is fetching, until the deadline (System.nanoTime)
+     */
+    private Optional<CityInfo> awaitShared(String city, Duration maxAge, long deadline) {
+      while (System.nanoTime() < deadline) {
+        try {
+          Thread.sleep(SHARED_POLL_MILLIS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        Optional<CityInfo> shared = getShared(city, maxAge);
+        if (shared.isPresent()) {
+          return shared;
+        }
+      }
+      return Optional.empty();
+    }
+
+    /**
+     * The shared forecast for the city, noting its age for ForecastExpiry
+     */
+    private Optional<CityInfo> getShared(String city, Duration maxAge) {
+      return sharedCache.get(city, maxAge).map(shared -> {
+        sharedHits.put(city, new SharedHit(shared.cityInfo(), ticker.read() + cacheTtl.minus(shared.age()).toNanos()));
+        return shared.cityInfo();
+      });
+    }
+
+    private void putAll(Map<String, CityInfo> loaded, List<String> cities, List<CityInfo> forecasts) {
+      for (int i = 0; i < cities.size(); i++) {
+        loaded.put(cities.get(i), forecasts.get(i));
+      }
+    }
+  }
+
+  /**
+   * Loads current conditions straight from upstream on the load executor, and refreshes them on the bounded
+   * refresh executor, asking for cities by name the same way ForecastLoader does
+   */
+  private class CurrentConditionsLoader implements AsyncCacheLoader<String, CityInfo> {
+
+    @Override
+    public CompletableFuture<CityInfo> asyncLoad(String key, Executor executor) {
+      return CompletableFuture.supplyAsync(() -> weatherRepo.getByCity(key, TimelineQuery.currentConditions()), executor);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, CityInfo>> asyncLoadAll(Set<? extends String> keys, Executor executor) {
+      return loadAll(keys, Map.of(), executor);
+    }
+
+    @Override
+    public CompletableFuture<CityInfo> asyncReload(String key, CityInfo oldValue, Executor executor) {
+      String name = oldValue.getAddress() != null ? oldValue.getAddress() : key;
+      return CompletableFuture.supplyAsync(() -> weatherRepo.getByCity(name, TimelineQuery.currentConditions()), refreshExecutor);
+    }
+
+    /**
+     * @param names Name to ask upstream for, by key; keys without one are asked for as they are
+     */
+    CompletableFuture<Map<String, CityInfo>> loadAll(Set<? extends String> keys, Map<String, String> names, Executor executor) {
+      List<String> cities = List.copyOf(keys);
+      return CompletableFuture.supplyAsync(() -> {
+        List<CityInfo> current = weatherRepo.getByCities(cities.stream().map(key -> names.getOrDefault(key, key)).toList(),
+            TimelineQuery.currentConditions());
+        Map<String, CityInfo> loaded = new HashMap<>(cities.size() * 2);
+        for (int i = 0; i < cities.size(); i++) {
+          loaded.put(cities.get(i), current.get(i));
+        }
+        return loaded;
+      }, executor);
+    }
   }
 }
@@ -0,0 +1,235 @@
+package com.weatherapp.myweatherapp.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Offline stand-in for the Visual Crossing timeline API, for load testing without spending quota
+ * (spring.profiles.active=stub-upstream points weather.visualcrossing.url at it).
+ * <p>
+ * Serves recorded timeline responses, one {city}.json per city ("new-york.json"), from the classpath's stub-upstream
+ * folder or from a recordings directory; a response saved from the real API with curl can be dropped straight in.
+ * As the real API does, the "address" field echoes the location asked for, and a city without a recording gets one
+ * of the others (picked by name, so always the same one). /timelinemulti wraps them in a "locations" array.
+ * <p>
+ * Each request waits latency plus a random share of latency-jitter, then fails with a 500 for error-rate of requests
+ * and a 429 for throttle-rate of them. Requests run on virtual threads so slow responses cost no pooled threads.
+ */
+public class RecordedVisualcrossingServer implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(RecordedVisualcrossingServer.class);
+
+  private static final String ADDRESS_FIELD = "\"address\":\"";
+
+  /**
+   * A recorded response split around the value of its "address" field
+   */
+  private record Recording(byte[] beforeAddress, byte[] afterAddress) {
+
+    static Recording of(String json) {
+      int start = json.indexOf(ADDRESS_FIELD);
+      if (start < 0) {
+        throw new IllegalArgumentException("Recorded timeline has no \"address\" field");
+      }
+      start += ADDRESS_FIELD.length();
+      int end = json.indexOf('"', start);
+      return new Recording(json.substring(0, start).getBytes(StandardCharsets.UTF_8),
+          json.substring(end).getBytes(StandardCharsets.UTF_8));
+    }
+
+    void writeTo(OutputStream out, String address) throws IOException {
+      out.write(beforeAddress);
+      out.write(jsonEscape(address).getBytes(StandardCharsets.UTF_8));
+      out.write(afterAddress);
+    }
+  }
+
+  private final Map<String, Recording> recordings;
+
+  private final List<Recording> fallbacks;
+
+  private final long latencyMillis;
+
+  private final long jitterMillis;
+
+  private final double errorRate;
+
+  private final double throttleRate;
+
+  private final AtomicLong requestCount = new AtomicLong();
+
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+  private final HttpServer server;
+
+  /**
+   * @param port          Port to listen on, or 0 for any free one
+   * @param recordingsDir Directory of {city}.json recordings, or blank for the bundled ones
+   * @param errorRate     Share of requests (0 to 1) answered with a 500
+   * @param throttleRate  Share of requests (0 to 1) answered with a 429
+   */
+  public RecordedVisualcrossingServer(int port, String recordingsDir, Duration latency, Duration latencyJitter,
+                                      double errorRate, double throttleRate) throws IOException {
+    this.recordings = loadRecordings(recordingsDir);
+    this.fallbacks = new ArrayList<>(recordings.values());
+    this.latencyMillis = latency.toMillis();
+    this.jitterMillis = latencyJitter.toMillis();
+    this.errorRate = errorRate;
+    this.throttleRate = throttleRate;
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+    server.createContext("/timeline/", this::handleTimeline);
+    server.createContext("/timelinemulti", this::handleTimelineMulti);
+    server.setExecutor(executor);
+    server.start();
+    log.info("Serving {} recorded Visual Crossing timelines on {} (latency {}ms + up to {}ms, error rate {}, throttle rate {})",
+        recordings.size(), url(), latencyMillis, jitterMillis, errorRate, throttleRate);
+  }
+
+  /**
+   * Base URL to use for weather.visualcrossing.url
+   */
+  public String url() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+  public long requestCount() {
+    return requestCount.get();
+  }
+
+  private static Map<String, Recording> loadRecordings(String recordingsDir) throws IOException {
+    String pattern = recordingsDir == null || recordingsDir.isBlank()
+        ? "classpath:stub-upstream/*.json"
+        : "file:" + recordingsDir + "/*.json";
+    // Sorted so the fallback for a city is the same on every run
+    Map<String, Recording> recordings = new TreeMap<>();
+    for (Resource resource : new PathMatchingResourcePatternResolver().getResources(pattern)) {
+      String fileName = resource.getFilename();
+      try (InputStream in = resource.getInputStream()) {
+        String json = new String(in.readAllBytes(), StandardCharsets.UTF_8).strip();
+        recordings.put(fileName.substring(0, fileName.length() - ".json".length()), Recording.of(json));
+      }
+    }
+    if (recordings.isEmpty()) {
+      throw new IllegalStateException("No recorded timelines found at " + pattern);
+    }
+    return recordings;
+  }
+
+  private Recording recordingFor(String city) {
+    Recording recording = recordings.get(city.trim().toLowerCase(Locale.ROOT).replace(' ', '-'));
+    return recording != null ? recording : fallbacks.get(Math.floorMod(city.hashCode(), fallbacks.size()));
+  }
+
+  private void handleTimeline(HttpExchange exchange) throws IOException {
+    // timeline/{city}[/{start}[/{end}]]
+    String path = exchange.getRequestURI().getRawPath().substring("/timeline/".length());
+    int end = path.indexOf('/');
+    String city = URLDecoder.decode(end < 0 ? path : path.substring(0, end), StandardCharsets.UTF_8);
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+    recordingFor(city).writeTo(body, city);
+    respond(exchange, body.toByteArray());
+  }
+
+  private void handleTimelineMulti(HttpExchange exchange) throws IOException {
+    String locations = "";
+    String query = exchange.getRequestURI().getRawQuery();
+    for (String param : query != null ? query.split("&") : new String[0]) {
+      if (param.startsWith("locations=")) {
+        locations = URLDecoder.decode(param.substring("locations=".length()), StandardCharsets.UTF_8);
+      }
+    }
+    String[] cities = locations.split("\\|");
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream(4096 * cities.length);
+    body.write(("{\"queryCost\":" + cities.length + ",\"locations\":[").getBytes(StandardCharsets.UTF_8));
+    for (int i = 0; i < cities.length; i++) {
+      if (i > 0) {
+        body.write(',');
+      }
+      recordingFor(cities[i]).writeTo(body, cities[i]);
+    }
+    body.write("]}".getBytes(StandardCharsets.UTF_8));
+    respond(exchange, body.toByteArray());
+  }
+
+  private void respond(HttpExchange exchange, byte[] body) throws IOException {
+    requestCount.incrementAndGet();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long delay = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    double roll = random.nextDouble();
+    if (roll < errorRate + throttleRate) {
+      exchange.sendResponseHeaders(roll < errorRate ? 500 : 429, -1);
+      exchange.close();
+      return;
+    }
+
+    String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+      ByteArrayOutputStream gzipped = new ByteArrayOutputStream(body.length / 4);
+      try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+        out.write(body);
+      }
+      body = gzipped.toByteArray();
+      exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+    }
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static String jsonEscape(String value) {
+    StringBuilder escaped = new StringBuilder(value.length() + 8);
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c < 0x20) {
+        escaped.append(String.format("\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,146 @@
+package com.weatherapp.myweatherapp;
+
+import com.weatherapp.myweatherapp.support.StubVisualcrossingServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the reactive variant (spring.main.web-application-type=reactive) end to end against a stub upstream.
+ * The stub reports the same daylight window and rainy conditions for every city.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.main.web-application-type=reactive")
+public class ReactiveWeatherControllerTest {
+
+    private static final StubVisualcrossingServer stub = startStub();
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    private static StubVisualcrossingServer startStub() {
+        try {
+            return new StubVisualcrossingServer();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void upstreamProperties(DynamicPropertyRegistry registry) {
+        registry.add("weather.visualcrossing.url", stub::url);
+        registry.add("weather.compare.timeout", () -> "1s");
+    }
+
+    @AfterEach
+    void resetStub() {
+        stub.setDelayMillis(0);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void testForecastByCity() {
+        webTestClient.get().uri("/forecast/{city}", "London")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists("ETag")
+                .expectHeader().valueMatches("Cache-Control", "max-age=\\d+")
+                .expectBody()
+                .jsonPath("$.address").isEqualTo("London")
+                .jsonPath("$.sunrise").isEqualTo("06:00:00");
+    }
+
+    /**
+     * Equal daylight hours are still mapped to 400 by GlobalExceptionHandler on the reactive stack.
+     */
+    /**
+     * The test client inflates gzip responses itself (dropping Content-Encoding), so check the gzip ETag and the body
+     */
+    @Test
+    public void testForecastByCity_Gzip() {
+        webTestClient.get().uri("/forecast/{city}", "London")
+                .header("Accept-Encoding", "gzip")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueMatches("ETag", "\"[0-9a-f]{32}-gzip\"")
+                .expectBody()
+                .jsonPath("$.address").isEqualTo("London");
+    }
+
+    /**
+     * Subscribers get each city's current forecast straight away
+     */
+    @Test
+    public void testSubscribe_StreamsForecasts() {
+        List<ServerSentEvent<String>> events = webTestClient.get().uri("/subscribe?cities={cities}", "Leeds,York")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() { })
+                .getResponseBody()
+                .take(2)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("forecast", "forecast"), events.stream().map(ServerSentEvent::event).toList());
+        assertTrue(events.stream().anyMatch(event -> event.data().contains("\"address\":\"York\"")));
+    }
+
+    @Test
+    public void testCompareDaylight_EqualDaylight() {
+        webTestClient.get().uri("/compare-daylight?city1={city1}&city2={city2}", "Paris", "Berlin")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Daylight hours are equal in both cities");
+    }
+
+    @Test
+    public void testCompareRain_BothRaining() {
+        webTestClient.get().uri("/compare-rain?city1={city1}&city2={city2}", "Madrid", "Rome")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].address").isEqualTo("Madrid")
+                .jsonPath("$[1].address").isEqualTo("Rome");
+    }
+
+    @Test
+    public void testCompareDaylightBatch_RanksCities() {
+        webTestClient.get().uri("/compare-daylight/batch?cities={cities}", "Oslo,Lisbon,Vienna")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].city").isEqualTo("Oslo")
+                .jsonPath("$[2].rank").isEqualTo(1);
+    }
+
+    @Test
+    public void testCompareRain_UpstreamTimeout() {
+        stub.setDelayMillis(1500);
+
+        webTestClient.get().uri("/compare-rain?city1={city1}&city2={city2}", "Dublin", "Cork")
+                .exchange()
+                .expectStatus().isEqualTo(504);
+    }
+}
@@ -0,0 +1,109 @@
+package com.weatherapp.myweatherapp;
+
+import com.weatherapp.myweatherapp.support.StubVisualcrossingServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Runs the comparison endpoints against a stub upstream that answers each lookup after a fixed delay.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class WeatherControllerConcurrencyTest {
+
+    private static final long UPSTREAM_DELAY_MILLIS = 400;
+
+    private static final StubVisualcrossingServer stub = startStub();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private static StubVisualcrossingServer startStub() {
+        try {
+            return new StubVisualcrossingServer();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void upstreamProperties(DynamicPropertyRegistry registry) {
+        registry.add("weather.visualcrossing.url", stub::url);
+        registry.add("weather.compare.timeout", () -> "1500ms");
+    }
+
+    @AfterEach
+    void resetStub() {
+        stub.setDelayMillis(0);
+        stub.setFailureStatus(0);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    /**
+     * Both cities are fetched in one multi-location request, so the request takes about one upstream delay rather than two.
+     */
+    @Test
+    public void testCompareRain_FetchesCitiesTogether() throws Exception {
+        stub.setDelayMillis(UPSTREAM_DELAY_MILLIS);
+        int upstreamRequests = stub.requestCount();
+
+        long start = System.nanoTime();
+        mockMvc.perform(get("/compare-rain")
+                        .param("city1", "Leeds")
+                        .param("city2", "York"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 2 * UPSTREAM_DELAY_MILLIS, "took " + elapsedMillis + "ms");
+        assertEquals(1, stub.requestCount() - upstreamRequests);
+    }
+
+    /**
+     * Test the /compare-daylight endpoint when the upstream is slower than the compare timeout.
+     */
+    @Test
+    public void testCompareDaylight_UpstreamTimeout() throws Exception {
+        stub.setDelayMillis(2500);
+
+        mockMvc.perform(get("/compare-daylight")
+                        .param("city1", "Bath")
+                        .param("city2", "Bristol"))
+                .andExpect(status().isGatewayTimeout());
+    }
+
+    /**
+     * Upstream errors are propagated to the caller rather than swallowed by the executor.
+     */
+    @Test
+    public void testCompareDaylight_UpstreamError() {
+        stub.setFailureStatus(500);
+
+        Exception ex = assertThrows(Exception.class, () -> mockMvc.perform(get("/compare-daylight")
+                .param("city1", "Derby")
+                .param("city2", "Hull")));
+
+        assertEquals("org.springframework.web.client.HttpServerErrorException$InternalServerError",
+                ex.getCause().getClass().getName());
+    }
+}
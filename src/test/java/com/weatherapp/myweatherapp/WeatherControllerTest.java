@@ -1,43 +1,124 @@
 package com.weatherapp.myweatherapp;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.weatherapp.myweatherapp.config.UpstreamExecutorConfig;
+import com.weatherapp.myweatherapp.controller.ForecastResponses;
 import com.weatherapp.myweatherapp.controller.WeatherController;
+import com.weatherapp.myweatherapp.exception.UpstreamRateLimitException;
+import com.weatherapp.myweatherapp.exception.UpstreamUnavailableException;
 import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoParser;
+import com.weatherapp.myweatherapp.model.RainChange;
+import com.weatherapp.myweatherapp.service.ForecastSubscriptions;
+import com.weatherapp.myweatherapp.service.SolarDaylight;
 import com.weatherapp.myweatherapp.service.WeatherService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.MediaType;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
-import java.lang.reflect.Constructor;
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(WeatherController.class)
+@Import({UpstreamExecutorConfig.class, ForecastResponses.class, SolarDaylight.class})
+@ImportAutoConfiguration({MetricsAutoConfiguration.class, SimpleMetricsExportAutoConfiguration.class})
 public class WeatherControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private SolarDaylight solarDaylight;
+
+    @Autowired
+    private WeatherController weatherController;
+
     @MockBean
     private WeatherService weatherService;
 
+    @MockBean
+    private ForecastSubscriptions forecastSubscriptions;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     /**
-     * Utility method to create an instance of CityInfo.CurrentConditions
-     * using reflection.
+     * The comparison endpoints look cities up in chunks; answer those from the per-city stubs of each test.
      */
-    private Object createCurrentConditionsInstance() throws Exception {
-        // Fully qualified name of the inner class. Note the $ separating the outer and inner class names.
-        String innerClassName = "com.weatherapp.myweatherapp.model.CityInfo$CurrentConditions";
-        Class<?> ccClass = Class.forName(innerClassName);
-        Constructor<?> ctor = ccClass.getDeclaredConstructor();
-        ctor.setAccessible(true); // in case the constructor is not public
-        return ctor.newInstance();
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void lookUpChunksCityByCity() {
+        when(weatherService.forecastByCities(anyList())).thenAnswer(invocation ->
+                ((List<String>) invocation.getArgument(0)).stream().map(weatherService::forecastByCity).toList());
+        when(weatherService.currentConditionsByCities(anyList())).thenAnswer(invocation ->
+                ((List<String>) invocation.getArgument(0)).stream().map(weatherService::forecastByCity).toList());
+    }
+
+    /**
+     * SolarDaylight is shared by the tests; start each one with no cities located.
+     */
+    @BeforeEach
+    void forgetLocatedCities() {
+        ((Cache<?, ?>) ReflectionTestUtils.getField(solarDaylight, "locations")).invalidateAll();
+    }
+
+    /**
+     * Utility method to build a CityInfo with the given address, daylight window and current conditions,
+     * read from a timeline JSON the same way the repository reads upstream responses.
+     */
+    private CityInfo createCityInfo(String address, String sunrise, String sunset, String conditions) throws Exception {
+        ObjectNode timeline = objectMapper.createObjectNode().put("address", address);
+        timeline.putObject("currentConditions")
+                .put("sunrise", sunrise)
+                .put("sunset", sunset)
+                .put("conditions", conditions);
+        return CityInfoParser.parse(objectMapper.writeValueAsBytes(timeline));
     }
 
 
@@ -47,20 +128,10 @@ public class WeatherControllerTest {
     @Test
     public void testCompareDaylight_CityTwoHasLongerDay() throws Exception {
         // Build CityOne: 06:00 to 18:00 (720 minutes)
-        CityInfo cityOne = new CityInfo();
-        ReflectionTestUtils.setField(cityOne, "address", "CityOne");
-        Object conditionsOne = createCurrentConditionsInstance();
-        ReflectionTestUtils.setField(conditionsOne, "sunrise", "06:00:00");
-        ReflectionTestUtils.setField(conditionsOne, "sunset", "18:00:00");
-        ReflectionTestUtils.setField(cityOne, "currentConditions", conditionsOne);
+        CityInfo cityOne = createCityInfo("CityOne", "06:00:00", "18:00:00", null);
 
         // Build CityTwo: 06:00 to 19:00 (780 minutes)
-        CityInfo cityTwo = new CityInfo();
-        ReflectionTestUtils.setField(cityTwo, "address", "CityTwo");
-        Object conditionsTwo = createCurrentConditionsInstance();
-        ReflectionTestUtils.setField(conditionsTwo, "sunrise", "06:00:00");
-        ReflectionTestUtils.setField(conditionsTwo, "sunset", "19:00:00");
-        ReflectionTestUtils.setField(cityTwo, "currentConditions", conditionsTwo);
+        CityInfo cityTwo = createCityInfo("CityTwo", "06:00:00", "19:00:00", null);
 
         when(weatherService.forecastByCity("CityOne")).thenReturn(cityOne);
         when(weatherService.forecastByCity("CityTwo")).thenReturn(cityTwo);
@@ -81,19 +152,9 @@ public class WeatherControllerTest {
     @Test
     public void testCompareDaylight_EqualDaylight() throws Exception {
         // Build Both cities: 06:00 to 18:00.
-        CityInfo cityOne = new CityInfo();
-        ReflectionTestUtils.setField(cityOne, "address", "CityOne");
-        Object conditionsOne = createCurrentConditionsInstance();
-        ReflectionTestUtils.setField(conditionsOne, "sunrise", "06:00:00");
-        ReflectionTestUtils.setField(conditionsOne, "sunset", "18:00:00");
-        ReflectionTestUtils.setField(cityOne, "currentConditions", conditionsOne);
-
-        CityInfo cityTwo = new CityInfo();
-        ReflectionTestUtils.setField(cityTwo, "address", "CityTwo");
-        Object conditionsTwo = createCurrentConditionsInstance();
-        ReflectionTestUtils.setField(conditionsTwo, "sunrise", "06:00:00");
-        ReflectionTestUtils.setField(conditionsTwo, "sunset", "18:00:00");
-        ReflectionTestUtils.setField(cityTwo, "currentConditions", conditionsTwo);
+        CityInfo cityOne = createCityInfo("CityOne", "06:00:00", "18:00:00", null);
+
+        CityInfo cityTwo = createCityInfo("CityTwo", "06:00:00", "18:00:00", null);
 
         when(weatherService.forecastByCity("CityOne")).thenReturn(cityOne);
         when(weatherService.forecastByCity("CityTwo")).thenReturn(cityTwo);
@@ -105,6 +166,8 @@ public class WeatherControllerTest {
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest())
                 .andExpect(content().string("Daylight hours are equal in both cities"));
+
+        assertEquals(1, meterRegistry.get("weather.errors").tag("exception", "DaylightException").counter().count());
     }
 
     /**
@@ -113,22 +176,10 @@ public class WeatherControllerTest {
     @Test
     public void testCompareRain_BothRaining() throws Exception {
         // Build CityOne: conditions contain "rain"
-        CityInfo cityOne = new CityInfo();
-        ReflectionTestUtils.setField(cityOne, "address", "CityOne");
-        Object conditionsOne = createCurrentConditionsInstance();
-        ReflectionTestUtils.setField(conditionsOne, "sunrise", "06:00:00");
-        ReflectionTestUtils.setField(conditionsOne, "sunset", "18:00:00");
-        ReflectionTestUtils.setField(conditionsOne, "conditions", "heavy rain");
-        ReflectionTestUtils.setField(cityOne, "currentConditions", conditionsOne);
+        CityInfo cityOne = createCityInfo("CityOne", "06:00:00", "18:00:00", "heavy rain");
 
         // Build CityTwo: conditions contain "rain"
-        CityInfo cityTwo = new CityInfo();
-        ReflectionTestUtils.setField(cityTwo, "address", "CityTwo");
-        Object conditionsTwo = createCurrentConditionsInstance();
-        ReflectionTestUtils.setField(conditionsTwo, "sunrise", "06:00:00");
-        ReflectionTestUtils.setField(conditionsTwo, "sunset", "18:00:00");
-        ReflectionTestUtils.setField(conditionsTwo, "conditions", "light rain");
-        ReflectionTestUtils.setField(cityTwo, "currentConditions", conditionsTwo);
+        CityInfo cityTwo = createCityInfo("CityTwo", "06:00:00", "18:00:00", "light rain");
 
         when(weatherService.forecastByCity("CityOne")).thenReturn(cityOne);
         when(weatherService.forecastByCity("CityTwo")).thenReturn(cityTwo);
@@ -150,22 +201,10 @@ public class WeatherControllerTest {
     @Test
     public void testCompareRain_OneRaining() throws Exception {
         // Build CityOne: clear conditions.
-        CityInfo cityOne = new CityInfo();
-        ReflectionTestUtils.setField(cityOne, "address", "CityOne");
-        Object conditionsOne = createCurrentConditionsInstance();
-        ReflectionTestUtils.setField(conditionsOne, "sunrise", "06:00:00");
-        ReflectionTestUtils.setField(conditionsOne, "sunset", "18:00:00");
-        ReflectionTestUtils.setField(conditionsOne, "conditions", "clear sky");
-        ReflectionTestUtils.setField(cityOne, "currentConditions", conditionsOne);
+        CityInfo cityOne = createCityInfo("CityOne", "06:00:00", "18:00:00", "clear sky");
 
         // Build CityTwo: raining.
-        CityInfo cityTwo = new CityInfo();
-        ReflectionTestUtils.setField(cityTwo, "address", "CityTwo");
-        Object conditionsTwo = createCurrentConditionsInstance();
-        ReflectionTestUtils.setField(conditionsTwo, "sunrise", "06:00:00");
-        ReflectionTestUtils.setField(conditionsTwo, "sunset", "18:00:00");
-        ReflectionTestUtils.setField(conditionsTwo, "conditions", "drizzle rain");
-        ReflectionTestUtils.setField(cityTwo, "currentConditions", conditionsTwo);
+        CityInfo cityTwo = createCityInfo("CityTwo", "06:00:00", "18:00:00", "drizzle rain");
 
         when(weatherService.forecastByCity("CityOne")).thenReturn(cityOne);
         when(weatherService.forecastByCity("CityTwo")).thenReturn(cityTwo);
@@ -186,22 +225,10 @@ public class WeatherControllerTest {
     @Test
     public void testCompareRain_NoneRaining() throws Exception {
         // Build CityOne: sunny.
-        CityInfo cityOne = new CityInfo();
-        ReflectionTestUtils.setField(cityOne, "address", "CityOne");
-        Object conditionsOne = createCurrentConditionsInstance();
-        ReflectionTestUtils.setField(conditionsOne, "sunrise", "06:00:00");
-        ReflectionTestUtils.setField(conditionsOne, "sunset", "18:00:00");
-        ReflectionTestUtils.setField(conditionsOne, "conditions", "sunny");
-        ReflectionTestUtils.setField(cityOne, "currentConditions", conditionsOne);
+        CityInfo cityOne = createCityInfo("CityOne", "06:00:00", "18:00:00", "sunny");
 
         // Build CityTwo: clear.
-        CityInfo cityTwo = new CityInfo();
-        ReflectionTestUtils.setField(cityTwo, "address", "CityTwo");
-        Object conditionsTwo = createCurrentConditionsInstance();
-        ReflectionTestUtils.setField(conditionsTwo, "sunrise", "06:00:00");
-        ReflectionTestUtils.setField(conditionsTwo, "sunset", "18:00:00");
-        ReflectionTestUtils.setField(conditionsTwo, "conditions", "clear");
-        ReflectionTestUtils.setField(cityTwo, "currentConditions", conditionsTwo);
+        CityInfo cityTwo = createCityInfo("CityTwo", "06:00:00", "18:00:00", "clear");
 
         when(weatherService.forecastByCity("CityOne")).thenReturn(cityOne);
         when(weatherService.forecastByCity("CityTwo")).thenReturn(cityTwo);
@@ -214,4 +241,292 @@ public class WeatherControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(0)));
     }
+
+    /**
+     * Test the /compare-daylight/batch endpoint ranks cities longest day first, with ties sharing a rank.
+     */
+    @Test
+    public void testCompareDaylightBatch_RanksCities() throws Exception {
+        when(weatherService.forecastByCity("CityOne")).thenReturn(createCityInfo("CityOne", "06:00:00", "18:00:00", "clear"));
+        when(weatherService.forecastByCity("CityTwo")).thenReturn(createCityInfo("CityTwo", "05:00:00", "20:00:00", "clear"));
+        when(weatherService.forecastByCity("CityThree")).thenReturn(createCityInfo("CityThree", "07:00:00", "19:00:00", "clear"));
+
+        mockMvc.perform(get("/compare-daylight/batch")
+                        .param("cities", "CityOne,CityTwo,CityThree,CityTwo")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].city").value("CityTwo"))
+                .andExpect(jsonPath("$[0].rank").value(1))
+                .andExpect(jsonPath("$[0].daylightMinutes").value(900))
+                .andExpect(jsonPath("$[1].rank").value(2))
+                .andExpect(jsonPath("$[2].rank").value(2));
+        // Only current conditions are needed to rank, so no full forecast is fetched
+        verify(weatherService).currentConditionsByCities(List.of("CityOne", "CityTwo", "CityThree"));
+        verify(weatherService, never()).forecastByCities(anyList());
+    }
+
+    /**
+     * Once a forecast has located a city and its sunrise and sunset agree with the computed ones, daylight
+     * comparisons involving it need no forecast lookups, apart from the winner's forecast for /compare-daylight.
+     */
+    @Test
+    public void testCompareDaylight_LocatedCitiesSkipForecasts() throws Exception {
+        ReflectionTestUtils.setField(solarDaylight, "clock", Clock.fixed(Instant.parse("2024-06-21T12:00:00Z"), ZoneOffset.UTC));
+        ObjectNode london = objectMapper.createObjectNode().put("address", "London").put("latitude", 51.5074).put("longitude", -0.1278);
+        london.putObject("currentConditions").put("sunrise", "04:43:09").put("sunset", "21:21:41");
+        ObjectNode singapore = objectMapper.createObjectNode().put("address", "Singapore").put("latitude", 1.3521).put("longitude", 103.8198);
+        singapore.putObject("currentConditions").put("sunrise", "06:59:26").put("sunset", "19:12:52");
+        when(weatherService.forecastByCity("London")).thenReturn(CityInfoParser.parse(objectMapper.writeValueAsBytes(london)));
+        when(weatherService.forecastByCity("Singapore")).thenReturn(CityInfoParser.parse(objectMapper.writeValueAsBytes(singapore)));
+
+        mockMvc.perform(get("/compare-daylight").param("city1", "London").param("city2", "Singapore"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.address").value("London"));
+        verify(weatherService).forecastByCities(List.of("London", "Singapore"));
+
+        clearInvocations(weatherService);
+        mockMvc.perform(get("/compare-daylight").param("city1", "Singapore").param("city2", "London"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.address").value("London"));
+        mockMvc.perform(get("/compare-daylight/batch").param("cities", "Singapore,London"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].city").value("London"))
+                .andExpect(jsonPath("$[0].daylightMinutes").value(998))
+                .andExpect(jsonPath("$[1].city").value("Singapore"));
+        verify(weatherService, never()).forecastByCities(anyList());
+        verify(weatherService, never()).currentConditionsByCities(anyList());
+        verify(weatherService, times(1)).forecastByCity("London");
+        verify(weatherService, never()).forecastByCity("Singapore");
+    }
+
+    /**
+     * Computed daylight within twice the cross-check tolerance can't be trusted to order two cities: here London's
+     * computed day (998 min) beats Canterbury's (995), but their forecasts, each within tolerance, say the opposite,
+     * and the forecast returned has to show the longer day.
+     */
+    @Test
+    public void testCompareDaylight_NearEqualCitiesComparedByForecasts() throws Exception {
+        ReflectionTestUtils.setField(solarDaylight, "clock", Clock.fixed(Instant.parse("2024-06-21T12:00:00Z"), ZoneOffset.UTC));
+        ObjectNode london = objectMapper.createObjectNode().put("address", "London").put("latitude", 51.5074).put("longitude", -0.1278);
+        london.putObject("currentConditions").put("sunrise", "04:45:00").put("sunset", "21:19:00");
+        ObjectNode canterbury = objectMapper.createObjectNode().put("address", "Canterbury").put("latitude", 51.2).put("longitude", 1.08);
+        canterbury.putObject("currentConditions").put("sunrise", "04:40:00").put("sunset", "21:19:00");
+        when(weatherService.forecastByCity("London")).thenReturn(CityInfoParser.parse(objectMapper.writeValueAsBytes(london)));
+        when(weatherService.forecastByCity("Canterbury")).thenReturn(CityInfoParser.parse(objectMapper.writeValueAsBytes(canterbury)));
+
+        // First while locating both cities, then with both computed
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/compare-daylight").param("city1", "London").param("city2", "Canterbury"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.address").value("Canterbury"));
+        }
+        assertEquals(995, solarDaylight.daylight("Canterbury").daylightMinutes());
+        assertEquals(998, solarDaylight.daylight("London").daylightMinutes());
+    }
+
+    /**
+     * Test the /compare-rain/batch endpoint returns only the cities where it is raining, in request order.
+     */
+    @Test
+    public void testCompareRainBatch_ReturnsRainingCities() throws Exception {
+        when(weatherService.forecastByCity("CityOne")).thenReturn(createCityInfo("CityOne", "06:00:00", "18:00:00", "Rain, Overcast"));
+        when(weatherService.forecastByCity("CityTwo")).thenReturn(createCityInfo("CityTwo", "06:00:00", "18:00:00", "sunny"));
+        when(weatherService.forecastByCity("CityThree")).thenReturn(createCityInfo("CityThree", "06:00:00", "18:00:00", "light rain"));
+
+        mockMvc.perform(get("/compare-rain/batch")
+                        .param("cities", "CityOne", "CityTwo", "CityThree")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].address").value("CityOne"))
+                .andExpect(jsonPath("$[1].address").value("CityThree"));
+    }
+
+    /**
+     * Test the /compare-rain/batch endpoint rejects requests with more cities than allowed.
+     */
+    @Test
+    public void testCompareRainBatch_TooManyCities() throws Exception {
+        String[] cities = new String[51];
+        for (int i = 0; i < cities.length; i++) {
+            cities[i] = "City" + i;
+        }
+
+        mockMvc.perform(get("/compare-rain/batch")
+                        .param("cities", cities)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("At most 50 cities can be compared at once"));
+    }
+
+    /**
+     * Test that /forecast/{city} is tagged with the forecast version, a digest of the body as sent, and cacheable for
+     * the rest of its cache TTL, and that revalidating with that version gets a 304 without a body.
+     */
+    @Test
+    public void testForecast_ConditionalGet() throws Exception {
+        CityInfo cityOne = createCityInfo("CityOne", "06:00:00", "18:00:00", "clear");
+        when(weatherService.forecastByCity("CityOne")).thenReturn(cityOne);
+        when(weatherService.timeToLive("CityOne")).thenReturn(Duration.ofSeconds(90));
+        String etag = "\"" + cityOne.getVersion() + "\"";
+
+        byte[] body = mockMvc.perform(get("/forecast/CityOne"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(header().string("Cache-Control", "max-age=90"))
+                .andExpect(jsonPath("$.address").value("CityOne"))
+                .andReturn().getResponse().getContentAsByteArray();
+        byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(body);
+        assertEquals(HexFormat.of().formatHex(sha256, 0, 16), cityOne.getVersion());
+        mockMvc.perform(get("/forecast/CityOne").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/forecast/CityOne").header("If-None-Match", "\"0000000000000000\""))
+                .andExpect(status().isOk());
+    }
+
+    /**
+     * Test that gzip-accepting clients get a compressed forecast under its own ETag, and can revalidate it too.
+     */
+    @Test
+    public void testForecast_Gzip() throws Exception {
+        CityInfo cityOne = createCityInfo("CityOne", "06:00:00", "18:00:00", "clear");
+        when(weatherService.forecastByCity("CityOne")).thenReturn(cityOne);
+        when(weatherService.timeToLive("CityOne")).thenReturn(Duration.ofSeconds(90));
+        String etag = "\"" + cityOne.getVersion() + "-gzip\"";
+
+        byte[] body = mockMvc.perform(get("/forecast/CityOne").header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("Vary", "Accept-Encoding"))
+                .andExpect(header().string("ETag", etag))
+                .andReturn().getResponse().getContentAsByteArray();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertEquals("CityOne", objectMapper.readTree(in).get("address").asText());
+        }
+
+        mockMvc.perform(get("/forecast/CityOne").header("Accept-Encoding", "gzip").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/forecast/CityOne").header("Accept-Encoding", "gzip;q=0"))
+                .andExpect(header().doesNotExist("Content-Encoding"));
+    }
+
+    /**
+     * Test that /subscribe streams the subscribed cities' forecasts as server-sent events, written on the send
+     * executor rather than by the thread that delivers them.
+     */
+    @Test
+    public void testSubscribe_StreamsForecasts() throws Exception {
+        List<Runnable> sends = new ArrayList<>();
+        Object sendExecutor = ReflectionTestUtils.getField(weatherController, "subscriptionSendExecutor");
+        ReflectionTestUtils.setField(weatherController, "subscriptionSendExecutor", (TaskExecutor) sends::add);
+        CityInfo cityOne = createCityInfo("CityOne", "06:00:00", "18:00:00", "Rain");
+        when(forecastSubscriptions.subscribe(eq(List.of("CityOne")), any())).thenAnswer(invocation -> {
+            ForecastSubscriptions.Listener listener = invocation.getArgument(1);
+            listener.onForecast("cityone", cityOne);
+            listener.onRainChange(new RainChange("cityone", "CityOne", true, "Rain"));
+            return (ForecastSubscriptions.Subscription) () -> { };
+        });
+
+        try {
+            MvcResult result = mockMvc.perform(get("/subscribe").param("cities", "CityOne"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            assertEquals("", result.getResponse().getContentAsString());
+
+            // One drain writes both events, in order
+            assertEquals(1, sends.size());
+            sends.forEach(Runnable::run);
+            String events = result.getResponse().getContentAsString();
+
+            assertEquals(MediaType.TEXT_EVENT_STREAM_VALUE, result.getResponse().getContentType());
+            assertTrue(events.contains("event:forecast\nid:" + cityOne.getVersion() + "\ndata:{"), events);
+            assertTrue(events.contains("event:rain\ndata:{\"city\":\"cityone\",\"address\":\"CityOne\",\"raining\":true"), events);
+            assertTrue(events.indexOf("event:forecast") < events.indexOf("event:rain"), events);
+        } finally {
+            ReflectionTestUtils.setField(weatherController, "subscriptionSendExecutor", sendExecutor);
+        }
+    }
+
+    /**
+     * Test that lookups refused by the client-side rate limiter and circuit breaker come back as 429 and 503.
+     */
+    @Test
+    public void testForecast_UpstreamRefused() throws Exception {
+        when(weatherService.forecastByCity("CityOne")).thenThrow(new UpstreamRateLimitException("quota reached"));
+        when(weatherService.timeToLive("CityOne")).thenReturn(Duration.ofMinutes(5));
+        when(weatherService.forecastByCity("CityTwo")).thenThrow(new UpstreamUnavailableException("breaker open"));
+
+        mockMvc.perform(get("/forecast/CityOne"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(content().string("quota reached"));
+        mockMvc.perform(get("/forecast/CityTwo"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(content().string("breaker open"));
+    }
+
+    /**
+     * A full upstream executor queue is answered with a 503 rather than an unmapped 500.
+     */
+    @Test
+    public void testCompareRain_UpstreamExecutorFull() throws Exception {
+        AsyncTaskExecutor full = mock(AsyncTaskExecutor.class);
+        when(full.submit(any(Runnable.class))).thenThrow(new TaskRejectedException("queue full"));
+        Object upstreamExecutor = ReflectionTestUtils.getField(weatherController, "upstreamExecutor");
+        ReflectionTestUtils.setField(weatherController, "upstreamExecutor", full);
+        try {
+            mockMvc.perform(get("/compare-rain").param("city1", "CityOne").param("city2", "CityTwo"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"));
+        } finally {
+            ReflectionTestUtils.setField(weatherController, "upstreamExecutor", upstreamExecutor);
+        }
+    }
+
+    /**
+     * An Error in a lookup fails the request at once, as itself, instead of leaving it to wait out the compare timeout.
+     */
+    @Test
+    public void testCompareRain_LookupErrorFailsRequest() throws Exception {
+        when(weatherService.forecastByCities(anyList())).thenThrow(new NoClassDefFoundError("CityInfoCodec"));
+        Object compareTimeout = ReflectionTestUtils.getField(weatherController, "compareTimeout");
+        ReflectionTestUtils.setField(weatherController, "compareTimeout", Duration.ofMinutes(1));
+        try {
+            long start = System.nanoTime();
+            ServletException thrown = assertThrows(ServletException.class, () ->
+                    mockMvc.perform(get("/compare-rain").param("city1", "CityOne").param("city2", "CityTwo")));
+            assertInstanceOf(NoClassDefFoundError.class, thrown.getCause());
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(30).toNanos());
+        } finally {
+            ReflectionTestUtils.setField(weatherController, "compareTimeout", compareTimeout);
+        }
+    }
+
+    /**
+     * Lookups still running at the compare timeout are interrupted rather than left holding upstream threads.
+     */
+    @Test
+    public void testCompareRain_TimeoutInterruptsLookups() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(weatherService.forecastByCities(anyList())).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(Duration.ofMinutes(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            throw new IllegalStateException("Interrupted");
+        });
+        Object compareTimeout = ReflectionTestUtils.getField(weatherController, "compareTimeout");
+        ReflectionTestUtils.setField(weatherController, "compareTimeout", Duration.ofMillis(200));
+        try {
+            mockMvc.perform(get("/compare-rain").param("city1", "CityOne").param("city2", "CityTwo"))
+                    .andExpect(status().isGatewayTimeout());
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        } finally {
+            ReflectionTestUtils.setField(weatherController, "compareTimeout", compareTimeout);
+        }
+    }
 }
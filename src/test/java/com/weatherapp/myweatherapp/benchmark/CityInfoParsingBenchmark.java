@@ -0,0 +1,73 @@
+package com.weatherapp.myweatherapp.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse time and allocation per Visual Crossing response: data binding into CityInfo (what RestTemplate used to do)
+ * versus the streaming CityInfoParser, on a full 15-day timeline with hourly data and on the trimmed
+ * include=days,current + elements response.
+ * Read gc.alloc.rate.norm for bytes allocated per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CityInfoParsingBenchmark {
+
+    @Param({"timeline-london.json", "timeline-london-trimmed.json"})
+    public String payload;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void loadPayload() throws IOException {
+        try (InputStream in = CityInfoParsingBenchmark.class.getResourceAsStream("/visualcrossing/" + payload)) {
+            json = in.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public CityInfo dataBinding() throws IOException {
+        return objectMapper.readValue(new ByteArrayInputStream(json), CityInfo.class);
+    }
+
+    @Benchmark
+    public CityInfo streaming() throws IOException {
+        return CityInfoParser.parse(new ByteArrayInputStream(json));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(CityInfoParsingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,49 @@
+package com.weatherapp.myweatherapp.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a CityInfo as the JSON our clients receive, for a 15-day forecast.
+ * Reading forecasts (streaming and data binding) is covered by CityInfoParsingBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CityInfoSerializationBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private CityInfo cityInfo;
+
+    @Setup(Level.Trial)
+    public void loadForecast() throws IOException {
+        try (InputStream in = CityInfoSerializationBenchmark.class.getResourceAsStream("/visualcrossing/timeline-london-trimmed.json")) {
+            cityInfo = CityInfoParser.parse(in);
+        }
+    }
+
+    @Benchmark
+    public byte[] serialization() throws IOException {
+        return objectMapper.writeValueAsBytes(cityInfo);
+    }
+}
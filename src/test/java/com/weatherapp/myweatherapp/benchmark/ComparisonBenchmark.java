@@ -0,0 +1,89 @@
+package com.weatherapp.myweatherapp.benchmark;
+
+import com.weatherapp.myweatherapp.controller.WeatherComparisons;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoParser;
+import com.weatherapp.myweatherapp.model.DaylightRank;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decision logic behind /compare-daylight and /compare-rain (single pair and batch) on forecasts already in memory,
+ * i.e. the work left in the controllers once the forecasts are cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComparisonBenchmark {
+
+    @Param({"50"})
+    public int batchSize;
+
+    private CityInfo longerDay;
+
+    private CityInfo shorterDay;
+
+    private List<String> cities;
+
+    private List<CityInfo> forecasts;
+
+    @Setup(Level.Trial)
+    public void createForecasts() throws IOException {
+        longerDay = forecast("Oslo", "04:00:00", "22:30:00", "Rain, Overcast");
+        shorterDay = forecast("Lisbon", "06:10:00", "21:05:00", "Clear");
+
+        cities = new ArrayList<>(batchSize);
+        forecasts = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            String city = "city-" + i;
+            // Spread daylight over a few distinct lengths so the ranking has ties, and make every third city rainy
+            String sunset = String.format("%02d:%02d:00", 18 + i % 4, i % 60);
+            cities.add(city);
+            forecasts.add(forecast(city, "06:00:00", sunset, i % 3 == 0 ? "Rain" : "Partially cloudy"));
+        }
+    }
+
+    @Benchmark
+    public CityInfo compareDaylight() {
+        return WeatherComparisons.longerDaylight(longerDay, shorterDay);
+    }
+
+    @Benchmark
+    public List<CityInfo> compareRain() {
+        return WeatherComparisons.raining(List.of(longerDay, shorterDay));
+    }
+
+    @Benchmark
+    public List<DaylightRank> compareDaylightBatch() {
+        return WeatherComparisons.rankByDaylight(cities, forecasts);
+    }
+
+    @Benchmark
+    public List<CityInfo> compareRainBatch() {
+        return WeatherComparisons.raining(forecasts);
+    }
+
+    private static CityInfo forecast(String address, String sunrise, String sunset, String conditions) throws IOException {
+        String json = "{\"address\":\"" + address + "\",\"currentConditions\":{\"sunrise\":\"" + sunrise
+                + "\",\"sunset\":\"" + sunset + "\",\"conditions\":\"" + conditions + "\"}}";
+        return CityInfoParser.parse(json.getBytes());
+    }
+}
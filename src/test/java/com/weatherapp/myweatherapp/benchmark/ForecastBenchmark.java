@@ -0,0 +1,79 @@
+package com.weatherapp.myweatherapp.benchmark;
+
+import com.weatherapp.myweatherapp.MyweatherappApplication;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.service.WeatherService;
+import com.weatherapp.myweatherapp.support.StubVisualcrossingServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end WeatherService.forecastByCity against an in-process stub upstream: a cache hit, and a cache miss
+ * that goes through the pooled HTTP client and the streaming parser. SampleTime reports the latency percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ForecastBenchmark {
+
+    private final AtomicLong missCounter = new AtomicLong();
+
+    private StubVisualcrossingServer stub;
+
+    private ConfigurableApplicationContext context;
+
+    private WeatherService weatherService;
+
+    @Setup(Level.Trial)
+    public void startApplication() throws IOException {
+        stub = new StubVisualcrossingServer();
+        context = new SpringApplicationBuilder(MyweatherappApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.main.banner-mode=off",
+                        "--logging.level.root=warn",
+                        "--weather.visualcrossing.url=" + stub.url(),
+                        // Measure the lookup itself, not the client-side rate limit
+                        "--weather.visualcrossing.rate-limit.per-second=1000000");
+        weatherService = context.getBean(WeatherService.class);
+        weatherService.forecastByCity("London");
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+        stub.close();
+    }
+
+    @Benchmark
+    public CityInfo cacheHit() {
+        return weatherService.forecastByCity("London");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public CityInfo cacheMiss() {
+        return weatherService.forecastByCity("city-" + missCounter.incrementAndGet());
+    }
+}
@@ -0,0 +1,225 @@
+package com.weatherapp.myweatherapp.load;
+
+import com.weatherapp.myweatherapp.MyweatherappApplication;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Replays a traffic mix over /forecast, /compare-daylight and /compare-rain and reports throughput and latency
+ * percentiles per endpoint. By default the app is started with the stub-upstream profile, so nothing leaves the machine.
+ * Run with: mvn test -Ploadtest -Dtest=ReplayLoadTest [-Dreplay.requests=20000 -Dreplay.concurrency=64 ...]
+ * <ul>
+ *   <li>replay.log: file of request paths to replay in order, one per line ("/forecast/london");
+ *   by default a seeded mix: 60% forecasts, 25% daylight and 15% rain comparisons over popular and long-tail cities</li>
+ *   <li>replay.target: base URL of an already running instance to load instead of starting one</li>
+ *   <li>replay.args: extra arguments for the started app, e.g. "--weather.stub-upstream.error-rate=0.05"</li>
+ *   <li>replay.requests, replay.warmup (not measured), replay.concurrency: closed-loop clients</li>
+ * </ul>
+ */
+@Tag("load")
+class ReplayLoadTest {
+
+  private static final List<String> POPULAR_CITIES = List.of("london", "paris", "berlin", "madrid", "new york", "tokyo",
+      "sydney", "cairo", "toronto", "singapore", "oslo", "reykjavik", "cape town", "rio de janeiro", "anchorage", "mumbai");
+
+  private static final int LONG_TAIL_CITIES = 200;
+
+  private static final String[] ENDPOINTS = {"/forecast", "/compare-daylight", "/compare-rain"};
+
+  private final int requests = Integer.getInteger("replay.requests", 20000);
+  private final int warmup = Integer.getInteger("replay.warmup", 2000);
+  private final int concurrency = Integer.getInteger("replay.concurrency", 64);
+  private final String target = System.getProperty("replay.target", "");
+  private final String extraArgs = System.getProperty("replay.args", "");
+  private final String log = System.getProperty("replay.log", "");
+
+  @Test
+  void testReplayTrafficMix() throws Exception {
+    List<String> paths = log.isBlank() ? trafficMix(warmup + requests) : Files.readAllLines(Path.of(log)).stream()
+        .filter(line -> !line.isBlank())
+        .toList();
+
+    if (!target.isBlank()) {
+      replay(target.replaceAll("/$", ""), paths);
+      return;
+    }
+
+    List<String> args = new ArrayList<>(List.of(
+        "--server.port=0",
+        "--spring.profiles.active=stub-upstream",
+        "--weather.stub-upstream.port=" + freePort(),
+        // Load the app rather than the client-side quota guard (long-tail cities would mostly get 429s)
+        "--weather.visualcrossing.rate-limit.per-second=100000"));
+    if (!extraArgs.isBlank()) {
+      args.addAll(Arrays.asList(extraArgs.trim().split("\\s+")));
+    }
+    try (ConfigurableApplicationContext context = new SpringApplicationBuilder(MyweatherappApplication.class)
+        .run(args.toArray(String[]::new))) {
+      int[] errors = replay("http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port"), paths);
+      if (extraArgs.isBlank()) {
+        assertEquals(0, Arrays.stream(errors).sum(), "5xx or failed requests without any injected upstream errors");
+      }
+    }
+  }
+
+  /**
+   * Sends the paths from concurrency clients, each sending its next request as soon as the last one is answered
+   *
+   * @return 5xx responses and failed requests per endpoint
+   */
+  private int[] replay(String baseUrl, List<String> paths) throws Exception {
+    int measuredFrom = log.isBlank() ? warmup : 0;
+    int measured = paths.size() - measuredFrom;
+    long[] latencies = new long[measured];
+    int[] endpoints = new int[measured];
+    int[] statuses = new int[measured];
+
+    long start = 0;
+    try (HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+         ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+      Semaphore inFlight = new Semaphore(concurrency);
+      for (int i = 0; i < paths.size(); i++) {
+        if (i == measuredFrom) {
+          // Let the warmup requests finish before measuring
+          inFlight.acquire(concurrency);
+          inFlight.release(concurrency);
+          start = System.nanoTime();
+        }
+        String path = paths.get(i);
+        int slot = i - measuredFrom;
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).build();
+        inFlight.acquire();
+        clients.execute(() -> {
+          try {
+            long sent = System.nanoTime();
+            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (slot >= 0) {
+              latencies[slot] = System.nanoTime() - sent;
+              endpoints[slot] = endpoint(path);
+              statuses[slot] = status;
+            }
+          } catch (IOException | InterruptedException e) {
+            if (slot >= 0) {
+              endpoints[slot] = endpoint(path);
+            }
+          } finally {
+            inFlight.release();
+          }
+        });
+      }
+      inFlight.acquire(concurrency);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    System.out.printf("Replayed %d requests (after %d warmup) with %d concurrent clients against %s%n",
+        measured, measuredFrom, concurrency, baseUrl);
+    System.out.printf("  throughput: %.0f req/s%n", measured / seconds);
+    System.out.printf("  %-18s %7s %7s %7s %8s %8s %8s %8s %8s%n",
+        "endpoint", "count", "4xx", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    int[] errors = new int[ENDPOINTS.length];
+    for (int e = -1; e < ENDPOINTS.length; e++) {
+      int endpoint = e;
+      long[] sorted = IntStream.range(0, measured)
+          .filter(i -> endpoint < 0 || endpoints[i] == endpoint)
+          .mapToLong(i -> latencies[i])
+          .sorted()
+          .toArray();
+      // 4xx are answers the app gives by design (e.g. equal daylight); 5xx and no response at all are errors
+      long rejected = IntStream.range(0, measured)
+          .filter(i -> (endpoint < 0 || endpoints[i] == endpoint) && statuses[i] >= 400 && statuses[i] < 500)
+          .count();
+      long failed = IntStream.range(0, measured)
+          .filter(i -> (endpoint < 0 || endpoints[i] == endpoint) && (statuses[i] == 0 || statuses[i] >= 500))
+          .count();
+      if (endpoint >= 0) {
+        errors[endpoint] = (int) failed;
+      }
+      System.out.printf("  %-18s %7d %7d %7d %8.1f %8.1f %8.1f %8.1f %8.1f%n", endpoint < 0 ? "all" : ENDPOINTS[endpoint],
+          sorted.length, rejected, failed, millis(sorted, 0.5), millis(sorted, 0.9), millis(sorted, 0.99), millis(sorted, 0.999),
+          millis(sorted, 1));
+    }
+    return errors;
+  }
+
+  /**
+   * Seeded request paths: a few popular cities get most of the traffic and a long tail of others the rest
+   */
+  private static List<String> trafficMix(int count) {
+    Random random = new Random(42);
+    List<String> paths = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int kind = random.nextInt(100);
+      String city1 = encode(city(random));
+      if (kind < 60) {
+        paths.add("/forecast/" + city1);
+      } else {
+        String city2 = city1;
+        while (city2.equals(city1)) {
+          city2 = encode(city(random));
+        }
+        paths.add((kind < 85 ? "/compare-daylight" : "/compare-rain") + "?city1=" + city1 + "&city2=" + city2);
+      }
+    }
+    return paths;
+  }
+
+  private static String city(Random random) {
+    // 90% of lookups go to the popular cities, skewed towards the first ones
+    if (random.nextInt(10) < 9) {
+      double skew = random.nextDouble();
+      return POPULAR_CITIES.get((int) (POPULAR_CITIES.size() * skew * skew));
+    }
+    return "town-" + random.nextInt(LONG_TAIL_CITIES);
+  }
+
+  private static int endpoint(String path) {
+    for (int i = ENDPOINTS.length - 1; i >= 0; i--) {
+      if (path.startsWith(ENDPOINTS[i])) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  private static double millis(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return Double.NaN;
+    }
+    int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    return sorted[Math.max(0, index)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  private static String encode(String city) {
+    return URLEncoder.encode(city, StandardCharsets.UTF_8).replace("+", "%20");
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package com.weatherapp.myweatherapp.load;
+
+import com.weatherapp.myweatherapp.MyweatherappApplication;
+import com.weatherapp.myweatherapp.support.StubVisualcrossingServer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares /forecast throughput with platform and virtual request threads while the upstream answers
+ * after a fixed delay. Every request asks for a different city so each one pays the upstream latency.
+ * Run with: mvn test -Ploadtest
+ */
+@Tag("load")
+class VirtualThreadLoadTest {
+
+  private static final long UPSTREAM_DELAY_MILLIS = 200;
+  private static final int REQUESTS = 2000;
+  private static final int CONCURRENCY = 400;
+  private static final int PLATFORM_THREADS = 50;
+
+  @Test
+  void testVirtualThreadsOutperformPlatformThreadsUnderSlowUpstream() throws Exception {
+    try (StubVisualcrossingServer stub = new StubVisualcrossingServer()) {
+      stub.setDelayMillis(UPSTREAM_DELAY_MILLIS);
+
+      double platform = requestsPerSecond(stub, false);
+      double virtual = requestsPerSecond(stub, true);
+
+      System.out.printf("Upstream delay %dms, %d requests, %d concurrent clients%n", UPSTREAM_DELAY_MILLIS, REQUESTS, CONCURRENCY);
+      System.out.printf("  platform threads (max %d): %.0f req/s%n", PLATFORM_THREADS, platform);
+      System.out.printf("  virtual threads:            %.0f req/s%n", virtual);
+
+      assertTrue(virtual > platform, "virtual threads should sustain more concurrent upstream waits");
+    }
+  }
+
+  private double requestsPerSecond(StubVisualcrossingServer stub, boolean virtualThreads) throws Exception {
+    String mode = virtualThreads ? "virtual" : "platform";
+    try (ConfigurableApplicationContext context = new SpringApplicationBuilder(MyweatherappApplication.class).run(
+        "--server.port=0",
+        "--spring.threads.virtual.enabled=" + virtualThreads,
+        "--server.tomcat.threads.max=" + PLATFORM_THREADS,
+        "--weather.visualcrossing.url=" + stub.url(),
+        "--weather.visualcrossing.http.max-connections=" + CONCURRENCY,
+        "--weather.visualcrossing.http.max-connections-per-route=" + CONCURRENCY,
+        "--weather.visualcrossing.rate-limit.per-second=100000",
+        "--weather.visualcrossing.bulkhead.max-concurrent-calls=" + CONCURRENCY);
+         HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+         ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+
+      String baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port") + "/forecast/";
+      Semaphore inFlight = new Semaphore(CONCURRENCY);
+      List<Future<Integer>> statuses = new ArrayList<>(REQUESTS);
+
+      long start = System.nanoTime();
+      for (int i = 0; i < REQUESTS; i++) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + mode + "-city-" + i)).build();
+        inFlight.acquire();
+        statuses.add(clients.submit(() -> {
+          try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+          } finally {
+            inFlight.release();
+          }
+        }));
+      }
+      for (Future<Integer> status : statuses) {
+        assertEquals(200, status.get());
+      }
+      long elapsedNanos = System.nanoTime() - start;
+
+      return REQUESTS / (elapsedNanos / 1e9);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.weatherapp.myweatherapp.model;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CityInfoParserTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static byte[] sample(String name) throws Exception {
+        try (InputStream in = CityInfoParserTest.class.getResourceAsStream("/visualcrossing/" + name)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void testParse_ReadsMappedFieldsAndSkipsTheRest() throws Exception {
+        CityInfo cityInfo = CityInfoParser.parse(sample("timeline-london.json"));
+
+        assertEquals("London", cityInfo.getAddress());
+        assertEquals("04:44:12", cityInfo.getSunrise());
+        assertEquals("21:11:45", cityInfo.getSunset());
+        assertEquals("Rain, Overcast", cityInfo.getCurrentConditions());
+        assertTrue(cityInfo.isRaining());
+        assertEquals(987, cityInfo.getDaylightMinutes());
+        assertEquals(15, cityInfo.getDays().size());
+        assertEquals("2024-06-01", cityInfo.getDays().get(0).date);
+    }
+
+    /**
+     * The streaming parser must produce exactly what data binding produced before
+     */
+    @Test
+    void testParse_MatchesDataBinding() throws Exception {
+        for (String name : new String[]{"timeline-london.json", "timeline-london-trimmed.json"}) {
+            byte[] json = sample(name);
+
+            String streamed = objectMapper.writeValueAsString(CityInfoParser.parse(json));
+            String bound = objectMapper.writeValueAsString(objectMapper.readValue(json, CityInfo.class));
+
+            assertEquals(bound, streamed, name);
+        }
+    }
+
+    @Test
+    void testParse_NullsAndMissingSections() throws Exception {
+        CityInfo cityInfo = CityInfoParser.parse(
+                "{\"address\":null,\"currentConditions\":null,\"days\":[],\"alerts\":[{\"x\":[1,2,{}]}]}".getBytes());
+
+        assertNull(cityInfo.getAddress());
+        assertNull(cityInfo.getSunrise());
+        assertTrue(cityInfo.getDays().isEmpty());
+        assertFalse(cityInfo.isRaining());
+        assertThrows(IllegalStateException.class, cityInfo::getDaylightMinutes);
+    }
+}
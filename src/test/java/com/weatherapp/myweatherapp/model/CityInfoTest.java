@@ -0,0 +1,139 @@
+package com.weatherapp.myweatherapp.model;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CityInfoTest {
+
+    private static final String TIMELINE = "{\"address\":\"London\",\"latitude\":51.5,\"description\":\"d\","
+            + "\"currentConditions\":{\"temp\":12.5,\"sunrise\":\"06:00:00\",\"sunset\":\"18:30:15\",\"feelslike\":10.0,"
+            + "\"humidity\":80.1,\"conditions\":\"Rain, Overcast\"},"
+            + "\"days\":[{\"datetime\":\"2024-01-01\",\"temp\":1.0,\"tempmax\":2.5,\"conditions\":\"c\",\"description\":\"x\"}]}";
+
+    /**
+     * The JSON clients get is the same as when every field was a String
+     */
+    private static final String CLIENT_JSON = "{\"sunrise\":\"06:00:00\",\"sunset\":\"18:30:15\",\"address\":\"London\","
+            + "\"description\":\"d\",\"currentConditions\":\"Rain, Overcast\",\"days\":[{\"datetime\":\"2024-01-01\","
+            + "\"temp\":\"1.0\",\"tempmax\":\"2.5\",\"tempmin\":null,\"conditions\":\"c\",\"description\":\"x\"}]}";
+
+    /**
+     * A timeline as upstream sends it, temperatures written in several ways, and what the String-typed model returned for it
+     */
+    private static final String UPSTREAM_TIMELINE = "{\"queryCost\":1,\"latitude\":51.5064,\"longitude\":-0.12721,"
+            + "\"resolvedAddress\":\"London, England, United Kingdom\",\"address\":\"London\",\"timezone\":\"Europe/London\","
+            + "\"description\":\"Similar temperatures continuing with a chance of rain today.\","
+            + "\"days\":[{\"datetime\":\"2024-06-01\",\"tempmax\":19,\"tempmin\":11.0,\"temp\":14.70,\"humidity\":71.3,"
+            + "\"conditions\":\"Rain, Partially cloudy\",\"description\":\"Partly cloudy throughout the day with rain.\","
+            + "\"hours\":[{\"datetime\":\"00:00:00\",\"temp\":12.1}]},"
+            + "{\"datetime\":\"2024-06-02\",\"tempmax\":-2,\"tempmin\":-0.5,\"temp\":1e1,\"conditions\":\"Clear\","
+            + "\"description\":\"Clear conditions throughout the day.\"}],"
+            + "\"currentConditions\":{\"temp\":17,\"feelslike\":17.0,\"humidity\":60.5,\"conditions\":\"Partially cloudy\","
+            + "\"sunrise\":\"04:48:35\",\"sunset\":\"21:13:10\"}}";
+
+    private static final String BASELINE_CLIENT_JSON = "{\"sunrise\":\"04:48:35\",\"sunset\":\"21:13:10\",\"address\":\"London\","
+            + "\"description\":\"Similar temperatures continuing with a chance of rain today.\",\"currentConditions\":\"Partially cloudy\","
+            + "\"days\":[{\"datetime\":\"2024-06-01\",\"temp\":\"14.70\",\"tempmax\":\"19\",\"tempmin\":\"11.0\","
+            + "\"conditions\":\"Rain, Partially cloudy\",\"description\":\"Partly cloudy throughout the day with rain.\"},"
+            + "{\"datetime\":\"2024-06-02\",\"temp\":\"1e1\",\"tempmax\":\"-2\",\"tempmin\":\"-0.5\",\"conditions\":\"Clear\","
+            + "\"description\":\"Clear conditions throughout the day.\"}]}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Test
+    void testSerialization_KeepsClientJsonShape() throws Exception {
+        assertEquals(CLIENT_JSON, objectMapper.writeValueAsString(CityInfoParser.parse(TIMELINE.getBytes())));
+        assertEquals(CLIENT_JSON, objectMapper.writeValueAsString(objectMapper.readValue(TIMELINE, CityInfo.class)));
+    }
+
+    /**
+     * Byte for byte what the String-typed model returned, however the response was read and whether or not
+     * it went through the forecast store's encoding
+     */
+    @Test
+    void testSerialization_MatchesBaselineByteForByte() throws Exception {
+        CityInfo parsed = CityInfoParser.parse(UPSTREAM_TIMELINE.getBytes());
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        CityInfoCodec.write(new DataOutputStream(encoded), parsed);
+        CityInfo decoded = CityInfoCodec.read(new DataInputStream(new ByteArrayInputStream(encoded.toByteArray())));
+
+        assertEquals(BASELINE_CLIENT_JSON, objectMapper.writeValueAsString(parsed));
+        assertEquals(BASELINE_CLIENT_JSON, objectMapper.writeValueAsString(objectMapper.readValue(UPSTREAM_TIMELINE, CityInfo.class)));
+        assertEquals(BASELINE_CLIENT_JSON, objectMapper.writeValueAsString(decoded));
+        assertEquals(14.7, parsed.getDays().get(0).currentTemperature);
+        assertEquals(10.0, decoded.getDays().get(1).currentTemperature);
+    }
+
+    @Test
+    void testNumberFormatting() {
+        assertEquals("2", CityInfo.formatNumber(2.0));
+        assertEquals("-0.5", CityInfo.formatNumber(-0.5));
+        assertNull(CityInfo.formatNumber(Double.NaN));
+        assertNull(CityInfo.keepText(2.0, "2"));
+        assertEquals("2.0", CityInfo.keepText(2.0, "2.0"));
+    }
+
+    @Test
+    void testPrecomputedDaylightAndRain() throws Exception {
+        CityInfo cityInfo = objectMapper.readValue(TIMELINE, CityInfo.class);
+
+        assertEquals(750, cityInfo.getDaylightMinutes());
+        assertTrue(cityInfo.isRaining());
+    }
+
+    /**
+     * Coordinates are kept for the daylight calculation but not written for clients (see CLIENT_JSON)
+     */
+    @Test
+    void testCoordinates() throws Exception {
+        for (CityInfo cityInfo : new CityInfo[]{CityInfoParser.parse(TIMELINE.getBytes()), objectMapper.readValue(TIMELINE, CityInfo.class)}) {
+            assertEquals(51.5, cityInfo.getLatitude());
+            assertTrue(Double.isNaN(cityInfo.getLongitude()));
+        }
+    }
+
+    @Test
+    void testVersion_FollowsContent() throws Exception {
+        CityInfo parsed = CityInfoParser.parse(TIMELINE.getBytes());
+        CityInfo reread = CityInfoParser.parse(TIMELINE.getBytes());
+        CityInfo changed = CityInfoParser.parse(TIMELINE.replace("18:30:15", "18:30:16").getBytes());
+
+        assertEquals(32, parsed.getVersion().length());
+        assertEquals(parsed.getVersion(), reread.getVersion());
+        assertNotEquals(parsed.getVersion(), changed.getVersion());
+    }
+
+    /**
+     * The version is a digest of the client JSON, so forecasts whose fields merely hash alike ("Aa" and "BB" share
+     * a String.hashCode) still get different versions
+     */
+    @Test
+    void testVersion_DigestsClientJson() throws Exception {
+        CityInfo aa = CityInfoParser.parse("{\"address\":\"Aa\"}".getBytes());
+        CityInfo bb = CityInfoParser.parse("{\"address\":\"BB\"}".getBytes());
+
+        assertNotEquals(aa.getVersion(), bb.getVersion());
+        byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(aa));
+        assertEquals(HexFormat.of().formatHex(sha256, 0, 16), aa.getVersion());
+    }
+
+    @Test
+    void testTimeFormatting() {
+        assertEquals(0, CityInfo.parseTime("00:00:00"));
+        assertEquals(86399, CityInfo.parseTime("23:59:59"));
+        assertEquals("07:05:09", CityInfo.formatTime(CityInfo.parseTime("07:05:09")));
+        assertEquals("06:00:00", CityInfo.formatTime(CityInfo.parseTime("06:00")));
+        assertNull(CityInfo.formatTime(CityInfo.parseTime(null)));
+    }
+}
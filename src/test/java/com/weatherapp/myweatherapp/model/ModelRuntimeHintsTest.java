@@ -0,0 +1,29 @@
+package com.weatherapp.myweatherapp.model;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.ReflectionHintsPredicates;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelRuntimeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    private final ReflectionHintsPredicates reflection = RuntimeHintsPredicates.reflection();
+
+    @Test
+    void testRegistersJacksonBindingOfNestedForecastTypes() {
+        new ModelRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertTrue(reflection.onMethod(CityInfo.class, "fromJson").test(hints));
+        assertTrue(reflection.onMethod(CityInfo.class, "getDays").test(hints));
+        assertTrue(reflection.onMethod(CityInfo.CurrentConditions.class, "fromJson").test(hints));
+        assertTrue(reflection.onMethod(CityInfo.Days.class, "fromJson").test(hints));
+        assertTrue(reflection.onMethod(CityInfo.Days.class, "getMaxTemperature").test(hints));
+        assertTrue(reflection.onField(CityInfo.Days.class, "date").test(hints));
+        assertTrue(reflection.onType(RainChange.class).test(hints));
+        assertTrue(reflection.onType(DaylightRank.class).test(hints));
+    }
+}
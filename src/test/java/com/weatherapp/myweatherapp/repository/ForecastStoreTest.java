@@ -0,0 +1,168 @@
+package com.weatherapp.myweatherapp.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForecastStoreTest {
+
+  @TempDir
+  Path dir;
+
+  Path file;
+
+  ForecastStore store;
+
+  Instant now = Instant.parse("2024-06-01T12:00:00Z");
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @BeforeEach
+  void openStore() {
+    file = dir.resolve("forecasts.log");
+    store = newStore();
+  }
+
+  @AfterEach
+  void closeStore() throws Exception {
+    store.close();
+  }
+
+  private ForecastStore newStore() {
+    ForecastStore forecastStore = new ForecastStore();
+    forecastStore.path = file.toString();
+    forecastStore.maxAge = Duration.ofHours(1);
+    forecastStore.maxFileSize = DataSize.ofMegabytes(1);
+    forecastStore.compactionExecutor = Runnable::run;
+    forecastStore.clock = Clock.fixed(now, ZoneOffset.UTC);
+    forecastStore.open();
+    return forecastStore;
+  }
+
+  private ForecastStore reopen() throws Exception {
+    store.close();
+    store = newStore();
+    return store;
+  }
+
+  private static CityInfo london() throws Exception {
+    try (InputStream in = ForecastStoreTest.class.getResourceAsStream("/visualcrossing/timeline-london-trimmed.json")) {
+      return CityInfoParser.parse(in);
+    }
+  }
+
+  private static CityInfo city(String address) throws Exception {
+    return CityInfoParser.parse(("{\"address\":\"" + address + "\"}").getBytes());
+  }
+
+  @Test
+  void testLoad_ReturnsLatestForecastPerCityAfterRestart() throws Exception {
+    CityInfo london = london();
+    store.append("london", city("old London"));
+    store.append("paris", city("Paris"));
+    store.append("london", london);
+
+    Map<String, ForecastStore.LoadedForecast> loaded = reopen().load();
+
+    assertEquals(List.of("paris", "london"), List.copyOf(loaded.keySet()));
+    // Everything the client sees survives the binary round trip
+    CityInfo reloaded = loaded.get("london").cityInfo();
+    assertEquals(objectMapper.writeValueAsString(london), objectMapper.writeValueAsString(reloaded));
+    assertEquals(987, reloaded.getDaylightMinutes());
+    assertEquals(london.isRaining(), reloaded.isRaining());
+    assertEquals(london.getLatitude(), reloaded.getLatitude());
+    assertEquals(london.getLongitude(), reloaded.getLongitude());
+  }
+
+  @Test
+  void testLoad_IgnoresForecastsOlderThanMaxAge() throws Exception {
+    store.append("london", city("London"));
+    now = now.plus(Duration.ofMinutes(45));
+    store = reopen();
+    store.append("paris", city("Paris"));
+    now = now.plus(Duration.ofMinutes(30));
+
+    Map<String, ForecastStore.LoadedForecast> loaded = reopen().load();
+    assertEquals(List.of("paris"), List.copyOf(loaded.keySet()));
+    assertEquals(Duration.ofMinutes(30), loaded.get("paris").age());
+  }
+
+  @Test
+  void testLoad_StopsAtTornRecord() throws Exception {
+    store.append("london", city("London"));
+    store.append("paris", city("Paris"));
+    store.close();
+
+    // Simulate a crash halfway through writing the last record
+    long size = Files.size(file);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(size - 5);
+    }
+
+    assertEquals(List.of("london"), List.copyOf(reopen().load().keySet()));
+
+    // The torn record is gone after loading, so new appends are readable again
+    store.append("rome", city("Rome"));
+    assertEquals(List.of("london", "rome"), List.copyOf(reopen().load().keySet()));
+  }
+
+  @Test
+  void testAppend_CompactsFileOnceItPassesMaxSize() throws Exception {
+    CityInfo london = london();
+    for (int i = 0; i < 2000; i++) {
+      store.append("city-" + (i % 10), london);
+    }
+
+    assertTrue(Files.size(file) < DataSize.ofMegabytes(1).toBytes() * 2);
+    assertEquals(10, reopen().load().size());
+  }
+
+  @Test
+  void testAppend_RetriesCompactionAfterRejectedSubmit() throws Exception {
+    AtomicInteger submissions = new AtomicInteger();
+    store.maxFileSize = DataSize.ofBytes(1);
+    store.compactionExecutor = task -> {
+      if (submissions.incrementAndGet() == 1) {
+        throw new TaskRejectedException("Compaction queue full");
+      }
+      task.run();
+    };
+
+    store.append("london", london());
+    store.append("london", london());
+
+    assertEquals(2, submissions.get());
+    assertEquals(List.of("london"), List.copyOf(reopen().load().keySet()));
+  }
+
+  @Test
+  void testDisabledWithoutPath() throws Exception {
+    ForecastStore disabled = new ForecastStore();
+    disabled.open();
+    disabled.append("london", city("London"));
+
+    assertFalse(disabled.isEnabled());
+    assertTrue(disabled.load().isEmpty());
+  }
+}
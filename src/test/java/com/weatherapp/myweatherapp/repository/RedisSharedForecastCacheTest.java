@@ -0,0 +1,125 @@
+package com.weatherapp.myweatherapp.repository;
+
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoParser;
+import com.weatherapp.myweatherapp.support.StubRedisServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisSharedForecastCacheTest {
+
+  private static final Instant NOW = Instant.parse("2024-06-01T12:00:00Z");
+
+  StubRedisServer redis;
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  RedisSharedForecastCache sharedCache;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    redis = new StubRedisServer();
+    sharedCache = newSharedCache(redis.url());
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    sharedCache.close();
+    redis.close();
+  }
+
+  private RedisSharedForecastCache newSharedCache(String url) {
+    return newSharedCache(url, Duration.ofSeconds(10));
+  }
+
+  private RedisSharedForecastCache newSharedCache(String url, Duration lockLease) {
+    RedisSharedForecastCache cache = new RedisSharedForecastCache(url, Duration.ofMinutes(5), lockLease,
+        Duration.ofMillis(500), meterRegistry);
+    cache.clock = Clock.fixed(NOW, ZoneOffset.UTC);
+    return cache;
+  }
+
+  private static CityInfo cityInfo() throws Exception {
+    return CityInfoParser.parse(("{\"address\":\"London\",\"currentConditions\":{\"sunrise\":\"05:00:00\","
+        + "\"sunset\":\"21:00:00\",\"conditions\":\"Rain\"}}").getBytes());
+  }
+
+  @Test
+  void testPutAndGet_RoundTripsForecast() throws Exception {
+    CityInfo london = cityInfo();
+    sharedCache.put("london", london);
+
+    CityInfo shared = sharedCache.get("london", Duration.ofMinutes(1)).orElseThrow().cityInfo();
+
+    assertEquals(london.getVersion(), shared.getVersion());
+    assertEquals(960, shared.getDaylightMinutes());
+    assertTrue(sharedCache.get("paris", Duration.ofMinutes(1)).isEmpty());
+    assertEquals(1, meterRegistry.get("weather.shared-cache.requests").tag("result", "hit").counter().count());
+    assertEquals(1, meterRegistry.get("weather.shared-cache.requests").tag("result", "miss").counter().count());
+  }
+
+  @Test
+  void testGet_SkipsForecastsOlderThanMaxAge() throws Exception {
+    sharedCache.put("london", cityInfo());
+    sharedCache.clock = Clock.fixed(NOW.plusSeconds(90), ZoneOffset.UTC);
+
+    assertTrue(sharedCache.get("london", Duration.ofMinutes(1)).isEmpty());
+    assertEquals(Duration.ofSeconds(90), sharedCache.get("london", Duration.ofMinutes(5)).orElseThrow().age());
+  }
+
+  @Test
+  void testTryLock_OnlyOneHolderUntilUnlocked() {
+    RedisSharedForecastCache otherNode = newSharedCache(redis.url());
+    try {
+      String token = sharedCache.tryLock("london").orElseThrow();
+      assertTrue(otherNode.tryLock("london").isEmpty());
+      assertTrue(otherNode.tryLock("paris").isPresent());
+
+      sharedCache.unlock("london", token);
+      assertTrue(otherNode.tryLock("london").isPresent());
+    } finally {
+      otherNode.close();
+    }
+  }
+
+  /**
+   * A holder whose lease ran out while it was still fetching doesn't release the lock the next holder took since
+   */
+  @Test
+  void testUnlock_LeavesLockTakenAfterLeaseExpired() throws Exception {
+    RedisSharedForecastCache slowNode = newSharedCache(redis.url(), Duration.ofMillis(100));
+    try {
+      String expired = slowNode.tryLock("london").orElseThrow();
+      Thread.sleep(150);
+      String current = sharedCache.tryLock("london").orElseThrow();
+      assertNotEquals(expired, current);
+
+      slowNode.unlock("london", expired);
+      assertTrue(redis.exists("weather:forecast-lock:london"));
+      sharedCache.unlock("london", current);
+      assertFalse(redis.exists("weather:forecast-lock:london"));
+    } finally {
+      slowNode.close();
+    }
+  }
+
+  /**
+   * An unreachable shared cache is an empty one whose locks are always granted
+   */
+  @Test
+  void testUnreachable_FallsBackToLocalFetching() throws Exception {
+    redis.close();
+
+    assertTrue(sharedCache.get("london", Duration.ofMinutes(1)).isEmpty());
+    sharedCache.put("london", cityInfo());
+    sharedCache.unlock("london", sharedCache.tryLock("london").orElseThrow());
+    assertTrue(meterRegistry.get("weather.shared-cache.requests").tag("result", "error").counter().count() >= 1);
+  }
+}
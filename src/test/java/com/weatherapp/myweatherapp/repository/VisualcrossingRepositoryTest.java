@@ -0,0 +1,121 @@
+package com.weatherapp.myweatherapp.repository;
+
+import com.weatherapp.myweatherapp.config.VisualcrossingClientConfig;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.support.StubVisualcrossingServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.observation.ObservationAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(classes = {VisualcrossingClientConfig.class, VisualcrossingRepository.class, VisualcrossingResilience.class})
+@ImportAutoConfiguration({MetricsAutoConfiguration.class, SimpleMetricsExportAutoConfiguration.class, ObservationAutoConfiguration.class})
+class VisualcrossingRepositoryTest {
+
+  @Autowired
+  VisualcrossingRepository repository;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  StubVisualcrossingServer stub;
+
+  @BeforeEach
+  void startStub() throws Exception {
+    stub = new StubVisualcrossingServer();
+    ReflectionTestUtils.setField(repository, "url", stub.url());
+  }
+
+  @AfterEach
+  void stopStub() {
+    stub.close();
+  }
+
+  /**
+   * Sequential lookups should all travel over one pooled keep-alive connection.
+   */
+  @Test
+  void testGetByCity_ReusesPooledConnection() {
+    for (int i = 0; i < 10; i++) {
+      CityInfo cityInfo = repository.getByCity("London");
+      assertEquals("06:00:00", cityInfo.getSunrise());
+    }
+
+    assertEquals(10, stub.requestCount());
+    assertEquals(1, stub.connectionCount());
+  }
+
+  /**
+   * The client asks for compressed responses and inflates them before parsing.
+   */
+  @Test
+  void testGetByCity_AcceptsGzip() {
+    CityInfo cityInfo = repository.getByCity("London");
+
+    assertEquals("London", cityInfo.getAddress());
+    assertTrue(stub.acceptEncoding().contains("gzip"), stub.acceptEncoding());
+  }
+
+  /**
+   * Upstream calls are timed by outcome and status, and failures are counted separately.
+   */
+  @Test
+  void testGetByCity_RecordsUpstreamMetrics() {
+    // The registry is shared with the other tests in this class
+    double successesBefore = successCount();
+    repository.getByCity("London");
+    stub.setFailureStatus(503);
+    assertThrows(HttpServerErrorException.class, () -> repository.getByCity("London"));
+
+    Timer failure = meterRegistry.get("visualcrossing.requests").tags("outcome", "SERVER_ERROR", "status", "503").timer();
+    assertEquals(1, successCount() - successesBefore);
+    assertEquals(1, failure.count());
+    assertEquals(1, meterRegistry.get("visualcrossing.errors").tag("status", "503").counter().count());
+  }
+
+  private double successCount() {
+    Timer success = meterRegistry.find("visualcrossing.requests").tags("outcome", "SUCCESS", "status", "200").timer();
+    return success != null ? success.count() : 0;
+  }
+
+  /**
+   * Several cities come back from one timelinemulti request per max-locations chunk, in request order.
+   */
+  @Test
+  void testGetByCities_BatchesLocations() {
+    ReflectionTestUtils.setField(repository, "maxLocationsPerRequest", 2);
+
+    List<CityInfo> forecasts = repository.getByCities(List.of("Leeds", "York", "Hull"), TimelineQuery.currentConditions());
+
+    assertEquals(List.of("Leeds", "York", "Hull"), forecasts.stream().map(CityInfo::getAddress).toList());
+    assertEquals(2, stub.requestCount());
+  }
+
+  @Test
+  void testTimelineUris_ExpressQuery() {
+    TimelineQuery days = TimelineQuery.of("days", "datetime,tempmax")
+        .between(LocalDate.of(2024, 6, 1), LocalDate.of(2024, 6, 7));
+
+    assertEquals("https://vc/timeline/London/2024-06-01/2024-06-07?key=k&include=days&elements=datetime,tempmax",
+        TimelineUris.timeline("https://vc/", "London", "k", days));
+    assertEquals("https://vc/timelinemulti?key=k&locations=Leeds|York&include=current"
+            + "&elements=latitude,longitude,temp,feelslike,humidity,conditions,sunrise,sunset",
+        TimelineUris.timelineMulti("https://vc/", List.of("Leeds", "York"), "k", TimelineQuery.currentConditions()));
+  }
+}
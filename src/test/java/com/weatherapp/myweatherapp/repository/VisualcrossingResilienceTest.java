@@ -0,0 +1,126 @@
+package com.weatherapp.myweatherapp.repository;
+
+import com.weatherapp.myweatherapp.exception.UpstreamRateLimitException;
+import com.weatherapp.myweatherapp.exception.UpstreamUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VisualcrossingResilienceTest {
+
+  VisualcrossingResilience resilience;
+
+  AtomicInteger upstreamCalls = new AtomicInteger();
+
+  @BeforeEach
+  void setUp() {
+    resilience = new VisualcrossingResilience();
+    resilience.requestsPerSecond = 100;
+    resilience.requestsPerDay = 0;
+    resilience.rateLimitTimeout = Duration.ZERO;
+    resilience.maxConcurrentCalls = 10;
+    resilience.bulkheadMaxWait = Duration.ZERO;
+    resilience.failureRateThreshold = 50;
+    resilience.slowCallRateThreshold = 100;
+    resilience.slowCallDuration = Duration.ofSeconds(10);
+    resilience.slidingWindowSize = 4;
+    resilience.waitInOpenState = Duration.ofMinutes(1);
+    resilience.meterRegistry = new SimpleMeterRegistry();
+  }
+
+  private String upstream() {
+    upstreamCalls.incrementAndGet();
+    return "forecast";
+  }
+
+  private String failingUpstream(HttpStatus status) {
+    upstreamCalls.incrementAndGet();
+    if (status.is5xxServerError()) {
+      throw HttpServerErrorException.create(status, status.getReasonPhrase(), null, null, null);
+    }
+    throw HttpClientErrorException.create(status, status.getReasonPhrase(), null, null, null);
+  }
+
+  @Test
+  void testCall_RejectsOverDailyQuotaWith429() {
+    resilience.requestsPerDay = 3;
+    resilience.init();
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals("forecast", resilience.call(this::upstream));
+    }
+    assertThrows(UpstreamRateLimitException.class, () -> resilience.call(this::upstream));
+    assertEquals(3, upstreamCalls.get());
+  }
+
+  @Test
+  void testCall_OpensCircuitAfterUpstreamFailuresAndFailsFast() {
+    resilience.init();
+
+    for (int i = 0; i < 4; i++) {
+      assertThrows(HttpServerErrorException.class, () -> resilience.call(() -> failingUpstream(HttpStatus.BAD_GATEWAY)));
+    }
+    assertThrows(UpstreamUnavailableException.class, () -> resilience.call(this::upstream));
+    assertEquals(4, upstreamCalls.get());
+  }
+
+  @Test
+  void testCall_ClientErrorsDoNotOpenCircuit() {
+    resilience.init();
+
+    for (int i = 0; i < 4; i++) {
+      assertThrows(HttpClientErrorException.class, () -> resilience.call(() -> failingUpstream(HttpStatus.BAD_REQUEST)));
+    }
+    assertEquals("forecast", resilience.call(this::upstream));
+  }
+
+  @Test
+  void testCall_RejectsWhenBulkheadIsFull() throws Exception {
+    resilience.maxConcurrentCalls = 1;
+    resilience.init();
+
+    CountDownLatch inFlight = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(() -> resilience.call(() -> {
+        inFlight.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return upstream();
+      }));
+      inFlight.await();
+
+      assertThrows(UpstreamUnavailableException.class, () -> resilience.call(this::upstream));
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testReactiveCall_TranslatesRejections() {
+    resilience.requestsPerDay = 1;
+    resilience.init();
+
+    StepVerifier.create(resilience.call(Mono.fromSupplier(this::upstream))).expectNext("forecast").verifyComplete();
+    StepVerifier.create(resilience.call(Mono.fromSupplier(this::upstream))).verifyError(UpstreamRateLimitException.class);
+    assertEquals(1, upstreamCalls.get());
+  }
+}
@@ -0,0 +1,160 @@
+package com.weatherapp.myweatherapp.service;
+
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoParser;
+import com.weatherapp.myweatherapp.model.RainChange;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ForecastSubscriptionsTest {
+
+  WeatherService weatherService;
+  ForecastSubscriptions subscriptions;
+
+  @BeforeEach
+  void setUp() {
+    weatherService = mock(WeatherService.class);
+    subscriptions = new ForecastSubscriptions();
+    subscriptions.weatherService = weatherService;
+    subscriptions.meterRegistry = new SimpleMeterRegistry();
+    subscriptions.citiesPerRequest = 10;
+    subscriptions.registerMetrics();
+  }
+
+  private static CityInfo cityInfo(String conditions) throws Exception {
+    return cityInfo("London", conditions);
+  }
+
+  private static CityInfo cityInfo(String address, String conditions) throws Exception {
+    return CityInfoParser.parse(("{\"address\":\"" + address + "\",\"currentConditions\":{\"conditions\":\"" + conditions + "\"}}").getBytes());
+  }
+
+  @Test
+  void testSubscribers_ShareOneLookupPerPass() throws Exception {
+    when(weatherService.forecastByCities(anyList())).thenReturn(List.of(cityInfo("Clear")));
+    when(weatherService.currentConditionsByCities(anyList())).thenReturn(List.of(cityInfo("Clear")));
+    RecordingListener first = new RecordingListener();
+    RecordingListener second = new RecordingListener();
+    subscriptions.subscribe(List.of("London"), first);
+    subscriptions.subscribe(List.of(" LONDON"), second);
+
+    subscriptions.pollSubscribedCities();
+
+    // One forecast lookup per subscribe, then one current conditions lookup per pass for both subscribers
+    verify(weatherService, times(2)).forecastByCities(anyList());
+    verify(weatherService).currentConditionsByCities(List.of("london"));
+    // Unchanged current conditions don't cost a forecast
+    verify(weatherService, never()).refreshForecastsByCities(anyList());
+    // Unchanged forecasts are not sent again
+    assertEquals(1, first.forecasts.size());
+    assertEquals(1, second.forecasts.size());
+    assertEquals(1.0, subscriptions.meterRegistry.get("weather.subscriptions.cities").gauge().value());
+    assertEquals(2.0, subscriptions.meterRegistry.get("weather.subscriptions.listeners").gauge().value());
+  }
+
+  @Test
+  void testPoll_SendsChangesAndRainTransitions() throws Exception {
+    when(weatherService.forecastByCities(anyList())).thenReturn(List.of(cityInfo("Clear")));
+    RecordingListener listener = new RecordingListener();
+    subscriptions.subscribe(List.of("London"), listener);
+
+    when(weatherService.currentConditionsByCities(anyList())).thenReturn(List.of(cityInfo("Rain, Overcast")));
+    when(weatherService.refreshForecastsByCities(anyList())).thenReturn(List.of(cityInfo("Rain, Overcast")));
+    subscriptions.pollSubscribedCities();
+    when(weatherService.currentConditionsByCities(anyList())).thenReturn(List.of(cityInfo("Overcast")));
+    when(weatherService.refreshForecastsByCities(anyList())).thenReturn(List.of(cityInfo("Overcast")));
+    subscriptions.pollSubscribedCities();
+
+    assertEquals(3, listener.forecasts.size());
+    assertEquals(List.of(new RainChange("london", "London", true, "Rain, Overcast"),
+        new RainChange("london", "London", false, "Overcast")), listener.rainChanges);
+  }
+
+  @Test
+  void testPoll_RefetchesOnlyCitiesWhoseConditionsChanged() throws Exception {
+    when(weatherService.forecastByCities(anyList())).thenReturn(List.of(cityInfo("London", "Clear"), cityInfo("Paris", "Clear")));
+    RecordingListener listener = new RecordingListener();
+    subscriptions.subscribe(List.of("London", "Paris"), listener);
+
+    CityInfo londonClear = cityInfo("London", "Clear");
+    CityInfo parisRain = cityInfo("Paris", "Rain");
+    when(weatherService.currentConditionsByCities(anyList())).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).stream()
+        .map(city -> city.equals("paris") ? parisRain : londonClear).toList());
+    when(weatherService.refreshForecastsByCities(List.of("paris"))).thenReturn(List.of(parisRain));
+    subscriptions.pollSubscribedCities();
+
+    verify(weatherService).refreshForecastsByCities(List.of("paris"));
+    assertEquals(List.of("London", "Paris", "Paris"), listener.forecasts.stream().map(CityInfo::getAddress).toList());
+    assertEquals(List.of(new RainChange("paris", "Paris", true, "Rain")), listener.rainChanges);
+  }
+
+  /**
+   * A new subscriber starts from the forecast the feed's listeners were last sent, after they have been brought up
+   * to the newer one its own lookup found, so every listener sees the city's forecasts in the same order
+   */
+  @Test
+  void testSubscribe_BringsFeedUpToLookedUpForecast() throws Exception {
+    when(weatherService.forecastByCities(anyList())).thenReturn(List.of(cityInfo("Clear")));
+    RecordingListener first = new RecordingListener();
+    subscriptions.subscribe(List.of("London"), first);
+
+    when(weatherService.forecastByCities(anyList())).thenReturn(List.of(cityInfo("Rain")));
+    RecordingListener second = new RecordingListener();
+    subscriptions.subscribe(List.of("London"), second);
+
+    assertEquals(List.of("Clear", "Rain"), first.forecasts.stream().map(CityInfo::getCurrentConditions).toList());
+    assertEquals(List.of(new RainChange("london", "London", true, "Rain")), first.rainChanges);
+    assertEquals(List.of("Rain"), second.forecasts.stream().map(CityInfo::getCurrentConditions).toList());
+    assertTrue(second.rainChanges.isEmpty());
+  }
+
+  @Test
+  void testCancel_DropsCityWithItsLastListener() throws Exception {
+    when(weatherService.forecastByCities(anyList())).thenReturn(List.of(cityInfo("Clear")));
+    ForecastSubscriptions.Subscription subscription = subscriptions.subscribe(List.of("London"), new RecordingListener());
+
+    subscription.cancel();
+    subscription.cancel();
+    subscriptions.pollSubscribedCities();
+
+    assertTrue(subscriptions.feeds.isEmpty());
+    verify(weatherService, times(1)).forecastByCities(anyList());
+    verify(weatherService, never()).currentConditionsByCities(anyList());
+  }
+
+  @Test
+  void testPoll_KeepsGoingWhenLookupFails() throws Exception {
+    when(weatherService.forecastByCities(anyList())).thenReturn(List.of(cityInfo("Clear")));
+    RecordingListener listener = new RecordingListener();
+    subscriptions.subscribe(List.of("London"), listener);
+
+    when(weatherService.currentConditionsByCities(anyList())).thenThrow(new IllegalStateException("upstream down"));
+    subscriptions.pollSubscribedCities();
+
+    assertEquals(1, listener.forecasts.size());
+    assertEquals(1, subscriptions.feeds.size());
+  }
+
+  static class RecordingListener implements ForecastSubscriptions.Listener {
+
+    final List<CityInfo> forecasts = new ArrayList<>();
+    final List<RainChange> rainChanges = new ArrayList<>();
+
+    @Override
+    public void onForecast(String city, CityInfo cityInfo) {
+      forecasts.add(cityInfo);
+    }
+
+    @Override
+    public void onRainChange(RainChange change) {
+      rainChanges.add(change);
+    }
+  }
+}
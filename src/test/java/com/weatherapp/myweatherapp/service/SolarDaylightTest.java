@@ -0,0 +1,103 @@
+package com.weatherapp.myweatherapp.service;
+
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoParser;
+import com.weatherapp.myweatherapp.model.DaylightRank;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarDaylightTest {
+
+  MeterRegistry meterRegistry;
+  SolarDaylight solarDaylight;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    solarDaylight = new SolarDaylight();
+    solarDaylight.meterRegistry = meterRegistry;
+    solarDaylight.enabled = true;
+    solarDaylight.tolerance = Duration.ofMinutes(5);
+    solarDaylight.recheck = Duration.ofDays(1);
+    solarDaylight.cacheMaxSize = 100;
+    solarDaylight.clock = Clock.fixed(Instant.parse("2024-06-21T12:00:00Z"), ZoneOffset.UTC);
+    solarDaylight.init();
+  }
+
+  private static CityInfo forecast(String address, double latitude, double longitude, String sunrise, String sunset) throws Exception {
+    return CityInfoParser.parse(("{\"address\":\"" + address + "\",\"latitude\":" + latitude + ",\"longitude\":" + longitude
+        + ",\"currentConditions\":{\"sunrise\":\"" + sunrise + "\",\"sunset\":\"" + sunset + "\"}}").getBytes());
+  }
+
+  private double crossChecks(String result) {
+    return meterRegistry.get("weather.daylight.cross-check").tag("result", result).counter().count();
+  }
+
+  /**
+   * Published sunrise/sunset times for 2024, to within a couple of minutes
+   */
+  @Test
+  void testDaylightMinutes_MatchesAlmanac() {
+    int midsummer = LocalDate.of(2024, 6, 21).getDayOfYear();
+    int midwinter = LocalDate.of(2024, 12, 21).getDayOfYear();
+
+    // London: 04:43 to 21:21 in June, 08:04 to 15:54 in December
+    assertEquals(998, SolarDaylight.daylightMinutes(51.5074, midsummer, 366), 2);
+    assertEquals(470, SolarDaylight.daylightMinutes(51.5074, midwinter, 366), 2);
+    // Singapore, near the equator: 06:59 to 19:12
+    assertEquals(733, SolarDaylight.daylightMinutes(1.3521, midsummer, 366), 2);
+    // Tromsø: midnight sun, then polar night
+    assertEquals(SolarDaylight.MINUTES_PER_DAY, SolarDaylight.daylightMinutes(69.6492, midsummer, 366));
+    assertEquals(0, SolarDaylight.daylightMinutes(69.6492, midwinter, 366));
+
+    short[] table = SolarDaylight.daylightTable(51.5074, 2024);
+    assertEquals(366, table.length);
+    assertEquals(SolarDaylight.daylightMinutes(51.5074, midsummer, 366), table[midsummer - 1]);
+  }
+
+  @Test
+  void testResolve_ServesLocatedCitiesWithoutForecasts() throws Exception {
+    assertNull(solarDaylight.daylight("London"));
+
+    DaylightRank resolved = solarDaylight.resolve("London", forecast("London, UK", 51.5074, -0.1278, "04:43:09", "21:21:41"));
+    assertEquals(new DaylightRank(0, "London", "London, UK", 998), resolved);
+    assertEquals(1, crossChecks("match"));
+
+    // Later lookups, under any spelling of the name, come from the table
+    assertEquals(new DaylightRank(0, " london", "London, UK", 998), solarDaylight.daylight(" london"));
+
+    solarDaylight.clock = Clock.fixed(Instant.parse("2024-12-21T12:00:00Z"), ZoneOffset.UTC);
+    assertEquals(470, solarDaylight.daylight("London").daylightMinutes(), 2);
+  }
+
+  @Test
+  void testResolve_KeepsForecastWhenCrossCheckFails() throws Exception {
+    // Coordinates that don't match the forecast's sunrise and sunset
+    DaylightRank resolved = solarDaylight.resolve("Springfield", forecast("Springfield", 0, 0, "06:00:00", "20:00:00"));
+
+    assertEquals(840, resolved.daylightMinutes());
+    assertNull(solarDaylight.daylight("Springfield"));
+    assertEquals(840, solarDaylight.resolve("Springfield", forecast("Springfield", 0, 0, "06:00:00", "20:00:00")).daylightMinutes());
+    assertEquals(1, crossChecks("mismatch"));
+  }
+
+  @Test
+  void testResolve_NoCoordinates() throws Exception {
+    CityInfo forecast = CityInfoParser.parse(
+        "{\"address\":\"Atlantis\",\"currentConditions\":{\"sunrise\":\"06:00:00\",\"sunset\":\"18:00:00\"}}".getBytes());
+
+    assertEquals(720, solarDaylight.resolve("Atlantis", forecast).daylightMinutes());
+    assertNull(solarDaylight.daylight("Atlantis"));
+    assertEquals(1, crossChecks("no-location"));
+  }
+}
@@ -1,9 +1,345 @@
 package com.weatherapp.myweatherapp.service;
 
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.model.CityInfoParser;
+import com.weatherapp.myweatherapp.repository.ForecastStore;
+import com.weatherapp.myweatherapp.repository.RedisSharedForecastCache;
+import com.weatherapp.myweatherapp.repository.SharedForecastCache;
+import com.weatherapp.myweatherapp.repository.TimelineQuery;
+import com.weatherapp.myweatherapp.repository.VisualcrossingRepository;
+import com.weatherapp.myweatherapp.support.StubRedisServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 
 class WeatherServiceTest {
 
-  // TODO: 12/05/2023 write unit tests
+  VisualcrossingRepository weatherRepo;
+  ForecastStore forecastStore = new ForecastStore();
+  WeatherService weatherService;
+  AtomicLong nanos = new AtomicLong();
+  // Refreshes queue up here until the test runs them
+  List<Runnable> pendingRefreshes = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    weatherRepo = mock(VisualcrossingRepository.class);
+    weatherService = newWeatherService(SharedForecastCache.none());
+  }
+
+  private WeatherService newWeatherService(SharedForecastCache sharedCache) {
+    WeatherService weatherService = new WeatherService();
+    weatherService.weatherRepo = weatherRepo;
+    weatherService.forecastStore = forecastStore;
+    weatherService.sharedCache = sharedCache;
+    weatherService.lockWait = Duration.ofSeconds(2);
+    weatherService.cacheTtl = Duration.ofMinutes(5);
+    weatherService.cacheMaxSize = 100;
+    weatherService.ticker = nanos::get;
+    weatherService.refreshAfter = Duration.ofMinutes(1);
+    weatherService.refreshAheadTopN = 1;
+    weatherService.refreshAheadInterval = Duration.ofSeconds(30);
+    weatherService.loadExecutor = Runnable::run;
+    weatherService.refreshExecutor = pendingRefreshes::add;
+    weatherService.meterRegistry = new SimpleMeterRegistry();
+    weatherService.initCache();
+    return weatherService;
+  }
+
+  private static RedisSharedForecastCache redisSharedCache(StubRedisServer redis) {
+    return new RedisSharedForecastCache(redis.url(), Duration.ofMinutes(5), Duration.ofSeconds(10),
+        Duration.ofMillis(500), new SimpleMeterRegistry());
+  }
+
+  private static CityInfo cityInfo() throws Exception {
+    return CityInfoParser.parse("{\"address\":\"London\"}".getBytes());
+  }
+
+  private void runPendingRefreshes() {
+    List<Runnable> refreshes = new ArrayList<>(pendingRefreshes);
+    pendingRefreshes.clear();
+    refreshes.forEach(Runnable::run);
+  }
+
+  /**
+   * Spellings of a city share one cache entry, fetched under the spelling of the request that missed
+   */
+  @Test
+  void testForecastByCity_CachesByNormalizedCity() throws Exception {
+    CityInfo london = cityInfo();
+    when(weatherRepo.getByCity("London")).thenReturn(london);
+
+    assertSame(london, weatherService.forecastByCity("London"));
+    assertSame(london, weatherService.forecastByCity(" LONDON "));
+
+    verify(weatherRepo, times(1)).getByCity("London");
+    assertEquals(1, weatherService.cacheStats().hitCount());
+    assertEquals(1, weatherService.cacheStats().missCount());
+  }
+
+  @Test
+  void testForecastByCities_FetchesMissingCitiesTogether() throws Exception {
+    CityInfo london = cityInfo();
+    when(weatherRepo.getByCity("London")).thenReturn(london);
+    when(weatherRepo.getByCities(List.of("Leeds", "York"))).thenAnswer(invocation -> List.of(cityInfo(), cityInfo()));
+    weatherService.forecastByCity("London");
+
+    List<CityInfo> forecasts = weatherService.forecastByCities(List.of("Leeds", "London", "York"));
+
+    assertEquals(3, forecasts.size());
+    assertSame(london, forecasts.get(1));
+    verify(weatherRepo, times(1)).getByCities(anyList());
+  }
+
+  /**
+   * Current conditions are fetched with the narrow query and cached on their own: they never answer a forecast
+   * lookup, and a cached forecast never answers them
+   */
+  @Test
+  void testCurrentConditionsByCities_CachedApartFromForecasts() throws Exception {
+    CityInfo current = cityInfo();
+    CityInfo forecast = cityInfo();
+    when(weatherRepo.getByCities(List.of("Leeds", "York"), TimelineQuery.currentConditions()))
+        .thenReturn(List.of(current, current));
+    when(weatherRepo.getByCity("York")).thenReturn(forecast);
+    weatherService.forecastByCity("York");
+
+    assertEquals(List.of(current, current), weatherService.currentConditionsByCities(List.of("Leeds", "York")));
+    assertEquals(List.of(current), weatherService.currentConditionsByCities(List.of(" leeds")));
+    assertSame(forecast, weatherService.forecastByCity("york"));
+
+    verify(weatherRepo, times(1)).getByCities(anyList(), any());
+    verify(weatherRepo, times(1)).getByCity("York");
+    verify(weatherRepo, never()).getByCity(anyString(), any());
+  }
+
+  /**
+   * A forecast fetched by one node is served to the others from the shared cache
+   */
+  @Test
+  void testSharedCache_OtherNodesReuseFetchedForecast() throws Exception {
+    try (StubRedisServer redis = new StubRedisServer();
+         RedisSharedForecastCache firstCache = redisSharedCache(redis);
+         RedisSharedForecastCache secondCache = redisSharedCache(redis)) {
+      when(weatherRepo.getByCity("London")).thenReturn(cityInfo());
+      WeatherService first = newWeatherService(firstCache);
+      WeatherService second = newWeatherService(secondCache);
+
+      first.forecastByCity("London");
+      CityInfo shared = second.forecastByCity("LONDON");
+
+      assertEquals("London", shared.getAddress());
+      verify(weatherRepo, times(1)).getByCity("London");
+      assertFalse(redis.exists("weather:forecast-lock:london"));
+    }
+  }
+
+  /**
+   * While one node holds a city's refresh lock, the others wait for its result instead of fetching too
+   */
+  @Test
+  void testSharedCache_OnlyLockHolderFetches() throws Exception {
+    try (StubRedisServer redis = new StubRedisServer();
+         RedisSharedForecastCache firstCache = redisSharedCache(redis);
+         RedisSharedForecastCache secondCache = redisSharedCache(redis)) {
+      CountDownLatch fetching = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      when(weatherRepo.getByCity("London")).thenAnswer(invocation -> {
+        fetching.countDown();
+        release.await();
+        return cityInfo();
+      });
+      WeatherService first = newWeatherService(firstCache);
+      WeatherService second = newWeatherService(secondCache);
+
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try {
+        Future<CityInfo> fromFirst = executor.submit(() -> first.forecastByCity("London"));
+        assertTrue(fetching.await(5, TimeUnit.SECONDS));
+        Future<CityInfo> fromSecond = executor.submit(() -> second.forecastByCity("London"));
+        Thread.sleep(200);
+        release.countDown();
+
+        assertEquals(fromFirst.get().getVersion(), fromSecond.get().getVersion());
+        verify(weatherRepo, times(1)).getByCity("London");
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Stored forecasts keep their age across a restart: they expire on time, and stale ones are refreshed at once
+   */
+  @Test
+  void testInitCache_SeedsStoredForecastsAtTheirAge() throws Exception {
+    CityInfo fresh = cityInfo();
+    CityInfo stale = cityInfo();
+    forecastStore = mock(ForecastStore.class);
+    when(forecastStore.load()).thenReturn(Map.of(
+        "london", new ForecastStore.LoadedForecast(fresh, Duration.ofSeconds(30)),
+        "paris", new ForecastStore.LoadedForecast(stale, Duration.ofMinutes(2)),
+        "rome", new ForecastStore.LoadedForecast(cityInfo(), Duration.ofMinutes(10))));
+    when(weatherRepo.getByCity(anyString())).thenAnswer(invocation -> cityInfo());
+
+    weatherService = newWeatherService(SharedForecastCache.none());
+
+    assertEquals(Duration.ofMinutes(4).plusSeconds(30), weatherService.timeToLive("London"));
+    assertSame(fresh, weatherService.forecastByCity("London"));
+    assertNull(weatherService.forecastCache.getIfPresent("rome"));
+    assertEquals(1, pendingRefreshes.size());
+    runPendingRefreshes();
+    assertNotSame(stale, weatherService.forecastByCity("Paris"));
+    verify(weatherRepo, times(1)).getByCity("London");
+    verify(weatherRepo, never()).getByCity("london");
+  }
+
+  @Test
+  void testForecastByCity_RefetchesAfterTtl() throws Exception {
+    when(weatherRepo.getByCity("London")).thenReturn(cityInfo());
+
+    weatherService.forecastByCity("London");
+    nanos.addAndGet(Duration.ofMinutes(6).toNanos());
+    weatherService.forecastByCity("London");
+
+    verify(weatherRepo, times(2)).getByCity("London");
+  }
+
+  /**
+   * A forecast taken from the shared cache half way through its TTL stays only for the other half
+   */
+  @Test
+  void testForecastByCity_SharedForecastKeptForRestOfTtl() throws Exception {
+    CityInfo shared = cityInfo();
+    SharedForecastCache sharedCache = mock(SharedForecastCache.class);
+    when(sharedCache.get(eq("london"), any()))
+        .thenReturn(Optional.of(new SharedForecastCache.SharedForecast(shared, Duration.ofSeconds(150))));
+    weatherService = newWeatherService(sharedCache);
+
+    assertSame(shared, weatherService.forecastByCity("London"));
+    assertEquals(Duration.ofSeconds(150), weatherService.timeToLive("London"));
+    nanos.addAndGet(Duration.ofSeconds(149).toNanos());
+    assertNotNull(weatherService.forecastCache.synchronous().getIfPresent("london"));
+    nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+    assertNull(weatherService.forecastCache.synchronous().getIfPresent("london"));
+    verify(weatherRepo, never()).getByCity(anyString());
+  }
+
+  /**
+   * A miss that the load executor has no room for fails at once with the rejection, answered with a 503
+   */
+  @Test
+  void testForecastByCity_RejectedWhenLoadExecutorFull() throws Exception {
+    weatherService.loadExecutor = task -> {
+      throw new TaskRejectedException("Load queue full");
+    };
+    weatherService.initCache();
+
+    assertThrows(TaskRejectedException.class, () -> weatherService.forecastByCity("London"));
+    verify(weatherRepo, never()).getByCity(anyString());
+  }
+
+  @Test
+  void testForecastByCity_EvictsWhenFull() throws Exception {
+    when(weatherRepo.getByCity(anyString())).thenAnswer(invocation -> cityInfo());
+
+    for (int i = 0; i < 500; i++) {
+      weatherService.forecastByCity("city" + i);
+    }
+    weatherService.forecastCache.synchronous().cleanUp();
+
+    assertTrue(weatherService.forecastCache.synchronous().estimatedSize() <= 100);
+    assertTrue(weatherService.cacheStats().evictionCount() >= 400);
+  }
+
+  @Test
+  void testForecastByCity_ConcurrentMissesShareOneFetch() throws Exception {
+    CityInfo london = cityInfo();
+    CountDownLatch release = new CountDownLatch(1);
+    when(weatherRepo.getByCity("London")).thenAnswer(invocation -> {
+      release.await();
+      return london;
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<CityInfo>> results = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        results.add(executor.submit(() -> weatherService.forecastByCity("London")));
+      }
+      Thread.sleep(100);
+      release.countDown();
+
+      for (Future<CityInfo> result : results) {
+        assertSame(london, result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verify(weatherRepo, times(1)).getByCity("London");
+  }
+
+  @Test
+  void testForecastByCity_ServesStaleWhileRefreshing() throws Exception {
+    CityInfo stale = cityInfo();
+    CityInfo fresh = cityInfo();
+    when(weatherRepo.getByCity("London")).thenReturn(stale, fresh);
+
+    weatherService.forecastByCity("London");
+    nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+
+    // Past refresh-after: the cached forecast comes back straight away and a refresh is queued
+    assertSame(stale, weatherService.forecastByCity("London"));
+    assertEquals(1, pendingRefreshes.size());
+    verify(weatherRepo, times(1)).getByCity("London");
+
+    runPendingRefreshes();
+    assertSame(fresh, weatherService.forecastByCity("London"));
+    assertEquals(1, weatherService.staleServed.count());
+  }
+
+  @Test
+  void testRefreshHotCities_RefreshesMostRequestedCityBeforeItGoesStale() throws Exception {
+    when(weatherRepo.getByCity(anyString())).thenAnswer(invocation -> cityInfo());
+    for (int i = 0; i < 6; i++) {
+      weatherService.forecastByCity("London");
+    }
+    for (int i = 0; i < 3; i++) {
+      weatherService.forecastByCity("Paris");
+    }
+
+    // Not old enough yet to go stale before the next pass
+    nanos.addAndGet(Duration.ofSeconds(10).toNanos());
+    weatherService.refreshHotCities();
+    assertTrue(pendingRefreshes.isEmpty());
+
+    // Would go stale before the next pass, as would Paris, which is still counted after halving:
+    // only the top city (top-n = 1) is refreshed
+    assertEquals(1, weatherService.requestCounts.get("paris").sum());
+    nanos.addAndGet(Duration.ofSeconds(25).toNanos());
+    weatherService.refreshHotCities();
+    runPendingRefreshes();
 
-}
\ No newline at end of file
+    verify(weatherRepo, times(2)).getByCity("London");
+    verify(weatherRepo, times(1)).getByCity("Paris");
+    assertEquals(1, weatherService.refreshedAhead.count());
+    assertEquals(0, weatherService.staleServed.count());
+  }
+}
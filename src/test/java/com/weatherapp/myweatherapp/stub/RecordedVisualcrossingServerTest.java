@@ -0,0 +1,70 @@
+package com.weatherapp.myweatherapp.stub;
+
+import com.weatherapp.myweatherapp.config.VisualcrossingClientConfig;
+import com.weatherapp.myweatherapp.model.CityInfo;
+import com.weatherapp.myweatherapp.repository.VisualcrossingRepository;
+import com.weatherapp.myweatherapp.repository.VisualcrossingResilience;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.observation.ObservationAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(classes = {VisualcrossingClientConfig.class, VisualcrossingRepository.class, VisualcrossingResilience.class})
+@ImportAutoConfiguration({MetricsAutoConfiguration.class, SimpleMetricsExportAutoConfiguration.class, ObservationAutoConfiguration.class})
+class RecordedVisualcrossingServerTest {
+
+  @Autowired
+  VisualcrossingRepository repository;
+
+  /**
+   * Recorded timelines parse like real ones, with the address echoing the location asked for.
+   */
+  @Test
+  void testServesRecordedTimelines() throws Exception {
+    try (RecordedVisualcrossingServer server = new RecordedVisualcrossingServer(0, "", Duration.ZERO, Duration.ZERO, 0, 0)) {
+      ReflectionTestUtils.setField(repository, "url", server.url());
+
+      CityInfo london = repository.getByCity("london");
+      assertEquals("london", london.getAddress());
+      assertEquals("04:48:35", london.getSunrise());
+
+      // Unrecorded cities get one of the recordings, always the same one
+      CityInfo atlantis = repository.getByCity("atlantis");
+      assertEquals("atlantis", atlantis.getAddress());
+      assertEquals(atlantis.getSunrise(), repository.getByCity("atlantis").getSunrise());
+
+      List<CityInfo> cities = repository.getByCities(List.of("new york", "london", "atlantis"));
+      assertEquals(List.of("new york", "london", "atlantis"), cities.stream().map(CityInfo::getAddress).toList());
+      assertEquals(london.getDaylightMinutes(), cities.get(1).getDaylightMinutes());
+    }
+  }
+
+  @Test
+  void testInjectsLatencyAndErrors() throws Exception {
+    HttpClient client = HttpClient.newHttpClient();
+    try (RecordedVisualcrossingServer failing = new RecordedVisualcrossingServer(0, "", Duration.ofMillis(50), Duration.ZERO, 1, 0);
+         RecordedVisualcrossingServer throttling = new RecordedVisualcrossingServer(0, "", Duration.ZERO, Duration.ZERO, 0, 1)) {
+      HttpRequest request = HttpRequest.newBuilder(URI.create(failing.url() + "timeline/london")).build();
+      long start = System.nanoTime();
+      assertEquals(500, client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+      assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+
+      request = HttpRequest.newBuilder(URI.create(throttling.url() + "timeline/london")).build();
+      assertEquals(429, client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package com.weatherapp.myweatherapp.support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal in-process stand-in for a Redis server, used by tests of the shared forecast cache.
+ * Speaks RESP2 and supports just what RedisSharedForecastCache sends: PING, GET, SET with NX/XX and PX/EX, DEL,
+ * plus the CLIENT/SELECT housekeeping a client may send on connect. There is no Lua: EVAL always runs the unlock
+ * script, deleting KEYS[1] only if it holds ARGV[1].
+ */
+public class StubRedisServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private final Map<String, Entry> data = new ConcurrentHashMap<>();
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+
+    private record Entry(byte[] value, long expiresAtMillis) {
+
+        boolean expired() {
+            return expiresAtMillis != 0 && System.currentTimeMillis() >= expiresAtMillis;
+        }
+    }
+
+    public StubRedisServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        connections.execute(this::accept);
+    }
+
+    /**
+     * URL to use for weather.shared-cache.url
+     */
+    public String url() {
+        return "redis://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    public boolean exists(String key) {
+        Entry entry = data.get(key);
+        return entry != null && !entry.expired();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                clients.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            while (true) {
+                List<byte[]> command = readCommand(in);
+                execute(command, out);
+                // Flush once the client has no more pipelined commands waiting
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    private void execute(List<byte[]> command, OutputStream out) throws IOException {
+        String name = string(command.get(0)).toUpperCase(Locale.ROOT);
+        switch (name) {
+            case "PING" -> simple(out, "PONG");
+            case "CLIENT", "SELECT" -> simple(out, "OK");
+            case "GET" -> {
+                Entry entry = data.get(string(command.get(1)));
+                bulk(out, entry == null || entry.expired() ? null : entry.value());
+            }
+            case "SET" -> set(command, out);
+            case "DEL" -> {
+                int deleted = 0;
+                for (byte[] key : command.subList(1, command.size())) {
+                    Entry entry = data.remove(string(key));
+                    if (entry != null && !entry.expired()) {
+                        deleted++;
+                    }
+                }
+                write(out, ":" + deleted + "\r\n");
+            }
+            case "EVAL" -> {
+                // EVAL script 1 key token
+                String key = string(command.get(3));
+                int deleted = 0;
+                synchronized (data) {
+                    Entry entry = data.get(key);
+                    if (entry != null && !entry.expired() && Arrays.equals(entry.value(), command.get(4))) {
+                        data.remove(key);
+                        deleted = 1;
+                    }
+                }
+                write(out, ":" + deleted + "\r\n");
+            }
+            default -> write(out, "-ERR unknown command '" + name + "'\r\n");
+        }
+    }
+
+    private void set(List<byte[]> command, OutputStream out) throws IOException {
+        String key = string(command.get(1));
+        boolean onlyIfAbsent = false;
+        boolean onlyIfPresent = false;
+        long expiresAt = 0;
+        for (int i = 3; i < command.size(); i++) {
+            switch (string(command.get(i)).toUpperCase(Locale.ROOT)) {
+                case "NX" -> onlyIfAbsent = true;
+                case "XX" -> onlyIfPresent = true;
+                case "PX" -> expiresAt = System.currentTimeMillis() + Long.parseLong(string(command.get(++i)));
+                case "EX" -> expiresAt = System.currentTimeMillis() + 1000 * Long.parseLong(string(command.get(++i)));
+                default -> {
+                    write(out, "-ERR syntax error\r\n");
+                    return;
+                }
+            }
+        }
+
+        Entry entry = new Entry(command.get(2), expiresAt);
+        boolean stored;
+        synchronized (data) {
+            boolean present = exists(key);
+            stored = !(onlyIfAbsent && present) && !(onlyIfPresent && !present);
+            if (stored) {
+                data.put(key, entry);
+            }
+        }
+        if (stored) {
+            simple(out, "OK");
+        } else {
+            bulk(out, null);
+        }
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header.charAt(0) != '*') {
+            throw new IOException("Expected a RESP array but got " + header);
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<byte[]> parts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            byte[] part = in.readNBytes(length);
+            in.readNBytes(2);
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException();
+            }
+            line.append((char) b);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    private static void simple(OutputStream out, String reply) throws IOException {
+        write(out, "+" + reply + "\r\n");
+    }
+
+    private static void bulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            write(out, "$-1\r\n");
+            return;
+        }
+        write(out, "$" + value.length + "\r\n");
+        out.write(value);
+        write(out, "\r\n");
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket client : clients) {
+            client.close();
+        }
+        connections.shutdownNow();
+    }
+}
@@ -0,0 +1,155 @@
+package com.weatherapp.myweatherapp.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal in-process stand-in for the Visual Crossing timeline API, used by tests.
+ * Every request to /timeline/{city} returns a small forecast for that city after an optional delay,
+ * and /timelinemulti?locations=a|b returns one forecast per location.
+ */
+public class StubVisualcrossingServer implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final HttpServer server;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile long delayMillis;
+    private volatile int failureStatus;
+    private volatile String acceptEncoding;
+
+    static {
+        // The JDK server writes headers and body separately; without this, Nagle + delayed ACK adds ~40ms per response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        // Keep idle keep-alive connections open; by default the server closes any beyond 200, breaking pooled clients
+        System.setProperty("sun.net.httpserver.maxIdleConnections", "10000");
+    }
+
+    public StubVisualcrossingServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/timeline/", this::handleTimeline);
+        server.createContext("/timelinemulti", this::handleTimelineMulti);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Base URL to use for weather.visualcrossing.url
+     */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Makes every following request fail with the given HTTP status, or succeed again when 0.
+     */
+    public void setFailureStatus(int failureStatus) {
+        this.failureStatus = failureStatus;
+    }
+
+    /**
+     * Accept-Encoding header of the last request; responses are gzipped when it allows it
+     */
+    public String acceptEncoding() {
+        return acceptEncoding;
+    }
+
+    public int requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Number of distinct client sockets that have sent requests, i.e. connections opened against the stub.
+     */
+    public int connectionCount() {
+        return clientPorts.size();
+    }
+
+    private void handleTimeline(HttpExchange exchange) throws IOException {
+        // timeline/{city}[/{start}[/{end}]]
+        String path = exchange.getRequestURI().getRawPath().substring("/timeline/".length());
+        int end = path.indexOf('/');
+        String city = URLDecoder.decode(end < 0 ? path : path.substring(0, end), StandardCharsets.UTF_8);
+        respond(exchange, timeline(city));
+    }
+
+    private void handleTimelineMulti(HttpExchange exchange) throws IOException {
+        String locations = "";
+        for (String param : exchange.getRequestURI().getRawQuery().split("&")) {
+            if (param.startsWith("locations=")) {
+                locations = URLDecoder.decode(param.substring("locations=".length()), StandardCharsets.UTF_8);
+            }
+        }
+        StringBuilder body = new StringBuilder("{\"queryCost\":1,\"locations\":[");
+        String[] cities = locations.split("\\|");
+        for (int i = 0; i < cities.length; i++) {
+            body.append(i > 0 ? "," : "").append(timeline(cities[i]));
+        }
+        respond(exchange, body.append("]}").toString());
+    }
+
+    private void respond(HttpExchange exchange, String json) throws IOException {
+        requestCount.incrementAndGet();
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (failureStatus != 0) {
+            exchange.sendResponseHeaders(failureStatus, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+                out.write(body);
+            }
+            body = gzipped.toByteArray();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String timeline(String city) {
+        return "{\"address\":\"" + city + "\",\"description\":\"Stub forecast\","
+                + "\"currentConditions\":{\"temp\":12.5,\"feelslike\":11.0,\"humidity\":80.0,"
+                + "\"conditions\":\"Rain, Overcast\",\"sunrise\":\"06:00:00\",\"sunset\":\"18:00:00\"},"
+                + "\"days\":[{\"datetime\":\"2024-06-01\",\"temp\":12.5,\"tempmax\":15.0,\"tempmin\":9.0,"
+                + "\"conditions\":\"Rain\",\"description\":\"Rain all day\"}]}";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}